@@ -1,14 +1,18 @@
 package com.zzh.client;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import javax.swing.*;
 import javax.swing.text.JTextComponent;
 import java.awt.*;
-import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 
 /**
@@ -34,6 +38,8 @@ public class ClientGUI extends JDialog {
     private JLabel specialMeaningLabel;
     private JLabel dicDisplayLabel;
     private String actionType;
+    private ClusterClient cluster;
+    private DicClient client;
 
     public static void main(String[] args) {
         // Start Server GUI---
@@ -44,7 +50,7 @@ public class ClientGUI extends JDialog {
      * Constructs a ClientGUI object and initializes the GUI components.
      *
      * @param parent the parent frame(Null for this project)
-     * @param args   command-line arguments (server IP and port)
+     * @param args   command-line arguments (server IP and port, or a comma separated host:port list of cluster servers)
      */
     public ClientGUI(Frame parent, String[] args) {
         super(parent);
@@ -55,12 +61,40 @@ public class ClientGUI extends JDialog {
         setDefaultCloseOperation(DISPOSE_ON_CLOSE);
         setLocationRelativeTo(parent);
 
-        String[] validatedArgs = validateArguments(args);
-        String ip = validatedArgs[0];
-        int port = Integer.parseInt(validatedArgs[1]);
+        String ip;
+        int port;
+        if (args.length == 1) {
+            // A single host:port list starts the client in cluster mode
+            cluster = new ClusterClient(Arrays.asList(args[0].split(",")),
+                                        Integer.getInteger("dic.cluster.vnodes", ClusterClient.DEFAULT_VIRTUAL_NODES));
+            ip = null;
+            port = 0;
+        } else {
+            String[] validatedArgs = validateArguments(args);
+            ip = validatedArgs[0];
+            port = Integer.parseInt(validatedArgs[1]);
+        }
+
+        // Read replicas given as primary=replica pairs, e.g. -Ddic.replicas=localhost:8080=localhost:8090
+        String replicaList = System.getProperty("dic.replicas", "");
+        if (!replicaList.isBlank()) {
+            if (cluster == null) {
+                cluster = new ClusterClient(List.of(ip + ":" + port), ClusterClient.DEFAULT_VIRTUAL_NODES);
+            }
+            for (String pair : replicaList.split(",")) {
+                String[] nodes = pair.trim().split("=");
+                if (nodes.length == 2) {
+                    cluster.addReplica(nodes[0], nodes[1]);
+                }
+            }
+            cluster.setReadFromReplica(true);
+        }
+        if (cluster == null) {
+            client = new DicClient(ip, port, DicClient.DEFAULT_MAX_CONNECTIONS);
+        }
 
         // Set up the submit button action
-        submitButton.addActionListener(e -> handleSubmitAction(ip, port));
+        submitButton.addActionListener(e -> handleSubmitAction());
 
         // Set up the action type combo box listener
         choseAction.addActionListener(e -> handleActionSelection());
@@ -70,13 +104,10 @@ public class ClientGUI extends JDialog {
 
     /**
      * Handles the submit action when the submit button is clicked.
-     * Validates the input fields, constructs a JSON request, and sends it to the server.
+     * Validates the input fields, constructs a JSON request, and sends it to the server in the background.
      * Displays the server response in the text area or shows an error dialog if something goes wrong.
-     *
-     * @param ip   the IP address of the server
-     * @param port the port number to connect to on the server
      */
-    private void handleSubmitAction(String ip, int port) {
+    private void handleSubmitAction() {
         String word = wordKeyText.getText();
         String meaning = meaningText.getText();
         String specialMeaning = specialMeaningText.getText();
@@ -108,44 +139,51 @@ public class ClientGUI extends JDialog {
         requestMap.put("specialMeaning", specialMeaning);
         requestMap.put("action", actionType);
 
-        // Create a new TCP client socket
-        ClientSocket client;
-        try {
-            client = new ClientSocket(ip, port);
-        } catch (IOException ex) {
+        // Send on the client library's pooled connections so the window stays responsive
+        submitButton.setEnabled(false);
+        CompletableFuture<HashMap<String, String>> pending =
+                cluster != null ? cluster.sendAsync(requestMap) : client.sendAsync(requestMap);
+        pending.whenComplete((response, error) -> SwingUtilities.invokeLater(() -> {
+            submitButton.setEnabled(true);
+            if (error != null) {
+                showRequestError(error);
+                return;
+            }
+
+            String responseCode = response.get("code");
+            String responseMsg = response.get("msg");
+            if (responseCode.equals("SUCCESS")) {
+                // Update TextField
+                dicDisplayText.setText(responseMsg);
+            } else {
+                JOptionPane.showMessageDialog(panel, responseMsg, "Try Again",
+                                              JOptionPane.ERROR_MESSAGE);
+            }
+        }));
+    }
+
+
+    /**
+     * Shows why a request failed: the server could not be reached (or stayed busy), or the
+     * communication with it broke down.
+     *
+     * @param error the exception the request completed with
+     */
+    private void showRequestError(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof UncheckedIOException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof ConnectException || cause instanceof ServerBusyException) {
             JOptionPane.showMessageDialog(panel, "Server Can Not Be Connected, Please Try Again Later And Make Sure Client and Check IP Address or Port Number Are Correct", "Connection Error",
                                           JOptionPane.WARNING_MESSAGE);
-            return;
-        }
-
-        // Send request and receive response from the server
-        HashMap<String, String> response;
-        try {
-            String requestJSON = new ObjectMapper().writeValueAsString(requestMap);
-            response = client.sendRequest(requestJSON);
-        } catch (JsonProcessingException ex) {
+        } else if (cause instanceof JsonProcessingException) {
             JOptionPane.showMessageDialog(panel, "Trouble Parsing Inputs to JSON, Please Try Again",
                                           "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        } catch (RuntimeException ex) {
-            JOptionPane.showMessageDialog(panel, "Trouble Closing Socket", "Error",
-                                          JOptionPane.ERROR_MESSAGE);
-            return;
-        } catch (IOException ex) {
-            JOptionPane.showMessageDialog(panel, "Trouble Reading/Writing to Server, Exiting Client",
-                                          "Error", JOptionPane.ERROR_MESSAGE);
-            System.exit(1);
-            return;
-        }
-
-        String responseCode = response.get("code");
-        String responseMsg = response.get("msg");
-        if (responseCode.equals("SUCCESS")) {
-            // Update TextField
-            dicDisplayText.setText(responseMsg);
         } else {
-            JOptionPane.showMessageDialog(panel, responseMsg, "Try Again",
-                                          JOptionPane.ERROR_MESSAGE);
+            JOptionPane.showMessageDialog(panel, "Trouble Reading/Writing to Server, Please Try Again",
+                                          "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
 
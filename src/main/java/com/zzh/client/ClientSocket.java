@@ -3,7 +3,9 @@ package com.zzh.client;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 
 /**
@@ -12,6 +14,12 @@ import java.util.HashMap;
  * which is then converted into a HashMap.
  *
  * <p>
+ * {@link #sendRequest} closes the connection after one request. {@link #exchange} leaves it open, so a
+ * {@link ConnectionPool} can reuse it for further requests sent with "keepAlive" set to "true".
+ * A ClientSocket must only be used by one thread at a time.
+ * </p>
+ *
+ * <p>
  * Created by Zhonghe Zheng, Student ID: 825612.
  * </p>
  */
@@ -20,6 +28,9 @@ public class ClientSocket {
     private BufferedReader reader;
     private BufferedWriter writer;
     private int clientNumber;
+    private int requestCount;
+    private long lastUsedMillis;
+    private static final ObjectMapper objectMapper = new ObjectMapper();
 
 
     /**
@@ -31,15 +42,40 @@ public class ClientSocket {
      * @throws IOException if an I/O error occurs when creating the socket
      */
     public ClientSocket(String ip, int port) throws IOException {
-        this.socket = new Socket(ip, port);
-        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+        this(ip, port, 0, 0);
+    }
+
+
+    /**
+     * Constructs a ClientSocket object with connect and read timeouts.
+     *
+     * @param ip                   the IP address of the server
+     * @param port                 the port number to connect to on the server
+     * @param connectTimeoutMillis how long to wait for the connection, 0 to wait forever
+     * @param readTimeoutMillis    how long to wait for each response, 0 to wait forever
+     * @throws ServerBusyException if the server rejected the connection because it is overloaded
+     * @throws IOException         if an I/O error occurs when creating the socket
+     */
+    public ClientSocket(String ip, int port, int connectTimeoutMillis, int readTimeoutMillis) throws IOException {
+        this.socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(ip, port), connectTimeoutMillis);
+            socket.setSoTimeout(readTimeoutMillis);
+            socket.setTcpNoDelay(true);
+            this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
 
-        //Get thread number as User Number/ Relic of Thread per Connection Implementation
-        this.clientNumber = reader.read();
+            //Get thread number as User Number/ Relic of Thread per Connection Implementation
+            this.clientNumber = reader.read();
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
         if (clientNumber == -1) {
-            throw new IOException();
+            socket.close();
+            throw new ServerBusyException("Server " + ip + ":" + port + " rejected the connection");
         }
+        this.lastUsedMillis = System.currentTimeMillis();
     }
 
 
@@ -52,18 +88,69 @@ public class ClientSocket {
      * @throws IOException if an I/O error occurs during communication with the server
      */
     public HashMap<String, String> sendRequest(String request) throws IOException {
+        HashMap<String, String> response = exchange(request);
+
+        //Close Socket to save resources
+        socket.close();
+
+        return response;
+    }
+
+
+    /**
+     * Sends a request to the server and receives a response, leaving the connection open.
+     *
+     * @param request the request string to be sent to the server
+     * @return a HashMap representing the server's JSON response
+     * @throws IOException if an I/O error occurs or the server closed the connection
+     */
+    public HashMap<String, String> exchange(String request) throws IOException {
         //Send Request to Server
         writer.write(request + "\n");
         writer.flush();
 
         //Receive Response From Server
         String responseJSON = reader.readLine();
-        HashMap<String, String> response = new ObjectMapper().readValue(responseJSON, HashMap.class);
+        if (responseJSON == null) {
+            throw new EOFException("Server closed the connection");
+        }
+        requestCount++;
+        lastUsedMillis = System.currentTimeMillis();
+        return objectMapper.readValue(responseJSON, HashMap.class);
+    }
 
-        //Close Socket to save resources
-        socket.close();
 
-        return response;
+    /**
+     * @return the number of requests answered on this connection
+     */
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+
+    /**
+     * @return the time of the last response (or of connecting), in milliseconds since the epoch
+     */
+    public long getLastUsedMillis() {
+        return lastUsedMillis;
+    }
+
+
+    /**
+     * @return true if the connection has been closed
+     */
+    public boolean isClosed() {
+        return socket.isClosed();
+    }
+
+
+    /**
+     * Closes the connection.
+     *
+     * @throws IOException if an I/O error occurs when closing the socket
+     */
+    public void close() throws IOException {
+        socket.close();
     }
 
 
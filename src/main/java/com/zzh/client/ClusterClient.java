@@ -0,0 +1,341 @@
+package com.zzh.client;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zzh.common.ConsistentHashRing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * The ClusterClient class puts the client in cluster mode: every word is routed to the one server of a
+ * multi-node deployment that owns it, using consistent hashing with virtual nodes. The node list and
+ * virtual node count must match the {@code dic.cluster.nodes} and {@code dic.cluster.vnodes} settings
+ * of the servers.
+ *
+ * <p>
+ * Read replicas can be registered for every server. When reading from replicas is enabled, READ
+ * requests are spread round-robin over the replicas of the owning server, falling back to the server
+ * itself if a replica cannot be reached; all other requests always go to the owning server.
+ * </p>
+ *
+ * <p>
+ * Requests without a word, such as STATS, go to any server. LIST and SCAN go to every server, and the
+ * sorted pages are merged into one; the returned "cursor" holds the position of every server, so it must be
+ * passed back unchanged for the next page.
+ * </p>
+ *
+ * <p>
+ * {@link #send} and {@link #sendAsync} use one pooled {@link DicClient} per server and are thread-safe.
+ * </p>
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class ClusterClient implements Closeable {
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final TypeReference<Map<String, String>> STRING_MAP = new TypeReference<>() {
+    };
+    private static final TypeReference<List<String>> STRING_LIST = new TypeReference<>() {
+    };
+    private final ConsistentHashRing<String> ring;
+    private final Map<String, List<String>> replicas = new ConcurrentHashMap<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final AtomicInteger nextNode = new AtomicInteger();
+    private volatile boolean readFromReplica;
+    private final Map<String, DicClient> clients = new ConcurrentHashMap<>();
+
+
+    /**
+     * Constructs a ClusterClient for the given servers.
+     *
+     * @param nodes        the servers of the cluster as {@code host:port} entries
+     * @param virtualNodes the number of ring positions per server
+     */
+    public ClusterClient(List<String> nodes, int virtualNodes) {
+        this.ring = new ConsistentHashRing<>(nodes, virtualNodes);
+    }
+
+
+    /**
+     * Finds the server owning a word.
+     *
+     * @param word the word of the request
+     * @return the {@code host:port} of the owning server
+     */
+    public String nodeFor(String word) {
+        return ring.nodeFor(word);
+    }
+
+
+    /**
+     * Registers a read replica of a server.
+     *
+     * @param primary the {@code host:port} of the server, as given in the node list
+     * @param replica the {@code host:port} of its replica
+     */
+    public void addReplica(String primary, String replica) {
+        replicas.computeIfAbsent(primary, p -> new CopyOnWriteArrayList<>()).add(replica);
+    }
+
+
+    /**
+     * Chooses whether READ requests are sent to replicas.
+     *
+     * @param readFromReplica true to read from replicas, false to always read from the owning server
+     */
+    public void setReadFromReplica(boolean readFromReplica) {
+        this.readFromReplica = readFromReplica;
+    }
+
+
+    /**
+     * Sends a request to the server owning its word (or one of its replicas for READ requests)
+     * over a pooled connection. Requests without a word go to any server, except LIST and SCAN, which
+     * are sent to every server and answered with the merged page, see {@link #mergePages}.
+     *
+     * @param request the request fields, the "word" is expected in lower case
+     * @return the server's response
+     * @throws IOException if no suitable server could answer
+     */
+    public HashMap<String, String> send(Map<String, String> request) throws IOException {
+        String action = request.get("action");
+        if ("LIST".equals(action) || "SCAN".equals(action)) {
+            Map<String, HashMap<String, String>> pages = new LinkedHashMap<>();
+            for (Map.Entry<String, String> node : decodeCursor(request.get("cursor")).entrySet()) {
+                pages.put(node.getKey(), clientFor(node.getKey()).send(pageRequest(request, node.getValue())));
+            }
+            return mergePages(pages, request);
+        }
+        String word = request.get("word");
+        if (word == null) {
+            return clientFor(anyNode()).send(request);
+        }
+        String owner = nodeFor(word);
+        String replica = replicaFor(owner, action);
+        if (replica != null) {
+            try {
+                return clientFor(replica).send(request);
+            } catch (IOException e) {
+                // Replica unavailable, the owning server can always serve the read
+            }
+        }
+        return clientFor(owner).send(request);
+    }
+
+
+    /**
+     * Sends a request like {@link #send} without blocking the calling thread. The pages of a LIST or
+     * SCAN request are requested from all servers at once.
+     *
+     * @param request the request fields, the "word" is expected in lower case
+     * @return a future completed with the server's response, or exceptionally with an
+     * {@link UncheckedIOException} wrapping the I/O error
+     */
+    public CompletableFuture<HashMap<String, String>> sendAsync(Map<String, String> request) {
+        String action = request.get("action");
+        if ("LIST".equals(action) || "SCAN".equals(action)) {
+            Map<String, CompletableFuture<HashMap<String, String>>> futures = new LinkedHashMap<>();
+            try {
+                decodeCursor(request.get("cursor")).forEach(
+                        (node, cursor) -> futures.put(node, clientFor(node).sendAsync(pageRequest(request, cursor))));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(new UncheckedIOException(e));
+            }
+            return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+                Map<String, HashMap<String, String>> pages = new LinkedHashMap<>();
+                futures.forEach((node, future) -> pages.put(node, future.join()));
+                try {
+                    return mergePages(pages, request);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        String word = request.get("word");
+        if (word == null) {
+            return clientFor(anyNode()).sendAsync(request);
+        }
+        String owner = nodeFor(word);
+        String replica = replicaFor(owner, action);
+        if (replica != null) {
+            return clientFor(replica).sendAsync(request)
+                                     .exceptionallyCompose(e -> clientFor(owner).sendAsync(request));
+        }
+        return clientFor(owner).sendAsync(request);
+    }
+
+
+    /**
+     * Closes the pooled connections to every server.
+     */
+    @Override
+    public void close() {
+        clients.values().forEach(DicClient::close);
+        clients.clear();
+    }
+
+
+    /**
+     * Picks the replica serving a request, round-robin over the owner's replicas.
+     *
+     * @return the replica's {@code host:port}, or null if the request must go to the owner
+     */
+    private String replicaFor(String owner, String action) {
+        List<String> ownerReplicas = replicas.get(owner);
+        if (readFromReplica && "READ".equals(action) && ownerReplicas != null && !ownerReplicas.isEmpty()) {
+            return ownerReplicas.get(Math.floorMod(nextReplica.getAndIncrement(), ownerReplicas.size()));
+        }
+        return null;
+    }
+
+
+    /**
+     * Picks a server for a request that is not about one word, round-robin over the servers.
+     */
+    private String anyNode() {
+        List<String> nodes = ring.getNodes();
+        return nodes.get(Math.floorMod(nextNode.getAndIncrement(), nodes.size()));
+    }
+
+
+    /**
+     * Decodes the cursor of a cluster-wide LIST or SCAN page: a JSON object holding the cursor of every
+     * server that may still have words after the page.
+     *
+     * @return the cursor to send to each server, empty ones for the first page
+     * @throws IOException if the cursor was not returned by {@link #mergePages}
+     */
+    private Map<String, String> decodeCursor(String cursor) throws IOException {
+        if (cursor == null || cursor.isEmpty()) {
+            Map<String, String> cursors = new LinkedHashMap<>();
+            ring.getNodes().forEach(node -> cursors.put(node, ""));
+            return cursors;
+        }
+        return objectMapper.readValue(cursor, STRING_MAP);
+    }
+
+
+    /**
+     * @return a copy of a LIST or SCAN request carrying one server's own cursor
+     */
+    private static Map<String, String> pageRequest(Map<String, String> request, String cursor) {
+        Map<String, String> pageRequest = new HashMap<>(request);
+        pageRequest.put("cursor", cursor);
+        return pageRequest;
+    }
+
+
+    /**
+     * Merges the sorted pages of the servers into one sorted page. A server that has more words than it
+     * returned may own words after its last one, so the page ends at the smallest last word of these
+     * servers, or earlier once the request's "limit" is reached. The next cursor holds, for every server with
+     * words left, the last of its words in the page, or the page's last word if the page has none of its
+     * words. It is empty once every server has returned all of its words.
+     *
+     * @param pages   the response of every server asked, by server
+     * @param request the LIST or SCAN request
+     * @return the merged response, or the first error response of a server
+     * @throws IOException if a page cannot be parsed
+     */
+    private HashMap<String, String> mergePages(Map<String, HashMap<String, String>> pages,
+                                               Map<String, String> request) throws IOException {
+        boolean withMeanings = "SCAN".equals(request.get("action"));
+        TreeMap<String, String> merged = new TreeMap<>();
+        Map<String, String> owners = new HashMap<>();
+        Set<String> unfinished = new HashSet<>();
+        String bound = null;
+        for (Map.Entry<String, HashMap<String, String>> page : pages.entrySet()) {
+            HashMap<String, String> response = page.getValue();
+            if (!"SUCCESS".equals(response.get("code"))) {
+                return response;
+            }
+            Map<String, String> words = new HashMap<>();
+            if (withMeanings) {
+                words = objectMapper.readValue(response.get("msg"), STRING_MAP);
+            } else {
+                for (String word : objectMapper.readValue(response.get("msg"), STRING_LIST)) {
+                    words.put(word, null);
+                }
+            }
+            for (Map.Entry<String, String> word : words.entrySet()) {
+                merged.put(word.getKey(), word.getValue());
+                owners.put(word.getKey(), page.getKey());
+            }
+            String nodeCursor = response.get("cursor");
+            if (nodeCursor != null && !nodeCursor.isEmpty()) {
+                unfinished.add(page.getKey());
+                if (bound == null || nodeCursor.compareTo(bound) < 0) {
+                    bound = nodeCursor;
+                }
+            }
+        }
+
+        // The servers have already refused a limit that is not a positive number
+        int limit = request.get("limit") != null ? Integer.parseInt(request.get("limit")) : Integer.MAX_VALUE;
+        LinkedHashMap<String, String> page = new LinkedHashMap<>();
+        Map<String, String> lastWords = new HashMap<>();
+        String last = null;
+        for (Map.Entry<String, String> entry : (bound == null ? merged : merged.headMap(bound, true)).entrySet()) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.put(entry.getKey(), entry.getValue());
+            lastWords.put(owners.get(entry.getKey()), entry.getKey());
+            last = entry.getKey();
+        }
+
+        Map<String, String> next = new LinkedHashMap<>();
+        if (last != null) {
+            // Words returned after the page are asked for again with the next page
+            for (String word : merged.tailMap(last, false).keySet()) {
+                unfinished.add(owners.get(word));
+            }
+            for (String node : pages.keySet()) {
+                if (unfinished.contains(node)) {
+                    next.put(node, lastWords.getOrDefault(node, last));
+                }
+            }
+        }
+
+        HashMap<String, String> response = new HashMap<>();
+        response.put("code", "SUCCESS");
+        response.put("msg", objectMapper.writeValueAsString(withMeanings ? page : page.keySet()));
+        response.put("cursor", next.isEmpty() ? "" : objectMapper.writeValueAsString(next));
+        return response;
+    }
+
+
+    private DicClient clientFor(String node) {
+        return clients.computeIfAbsent(node, n -> {
+            int colon = n.lastIndexOf(':');
+            return new DicClient(n.substring(0, colon), Integer.parseInt(n.substring(colon + 1)),
+                                 DicClient.DEFAULT_MAX_CONNECTIONS);
+        });
+    }
+
+
+    @Override
+    public String toString() {
+        return "ClusterClient{" +
+                "ring=" + ring +
+                ", replicas=" + replicas +
+                ", readFromReplica=" + readFromReplica +
+                '}';
+    }
+}
@@ -0,0 +1,138 @@
+package com.zzh.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The ConnectionPool class keeps a bounded number of kept-alive {@link ClientSocket}s to one server.
+ * Borrowing reuses the most recently returned connection when there is one, so requests skip the TCP
+ * and server handshake. Connections idle for longer than the server's keep-alive timeout are dropped
+ * rather than reused, because the server will have closed them.
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class ConnectionPool implements Closeable {
+    private final String host;
+    private final int port;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final long maxIdleMillis;
+    private final Semaphore permits;
+    private final Deque<ClientSocket> idle = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed;
+
+
+    /**
+     * Constructs a ConnectionPool for one server.
+     *
+     * @param host                 the server host
+     * @param port                 the server port
+     * @param maxConnections       the maximum number of connections open at once
+     * @param connectTimeoutMillis how long to wait for a new connection
+     * @param readTimeoutMillis    how long to wait for each response
+     * @param maxIdleMillis        how long an unused connection may be kept for reuse
+     */
+    public ConnectionPool(String host, int port, int maxConnections, int connectTimeoutMillis,
+                          int readTimeoutMillis, long maxIdleMillis) {
+        this.host = host;
+        this.port = port;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.maxIdleMillis = maxIdleMillis;
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+
+    /**
+     * Takes a connection from the pool, opening a new one if no idle connection is available.
+     * Every borrowed connection must be given back with {@link #release}.
+     *
+     * @param timeoutMillis how long to wait when all connections are in use
+     * @return a connection to the server
+     * @throws IOException if the pool is closed, the wait timed out or the server cannot be connected
+     */
+    public ClientSocket borrow(long timeoutMillis) throws IOException {
+        if (closed) {
+            throw new IOException("Connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out waiting for a connection to " + host + ":" + port);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a connection", e);
+        }
+
+        ClientSocket connection;
+        long now = System.currentTimeMillis();
+        while ((connection = idle.pollFirst()) != null) {
+            if (!connection.isClosed() && now - connection.getLastUsedMillis() < maxIdleMillis) {
+                return connection;
+            }
+            closeQuietly(connection);
+        }
+        try {
+            return new ClientSocket(host, port, connectTimeoutMillis, readTimeoutMillis);
+        } catch (IOException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Gives a borrowed connection back to the pool.
+     *
+     * @param connection the connection
+     * @param reusable   false if the connection failed and must be closed
+     */
+    public void release(ClientSocket connection, boolean reusable) {
+        if (reusable && !closed && !connection.isClosed()) {
+            idle.offerFirst(connection);
+        } else {
+            closeQuietly(connection);
+        }
+        permits.release();
+    }
+
+
+    /**
+     * Closes the idle connections and refuses further borrowing. Borrowed connections are closed
+     * when they are released.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        ClientSocket connection;
+        while ((connection = idle.pollFirst()) != null) {
+            closeQuietly(connection);
+        }
+    }
+
+
+    private static void closeQuietly(ClientSocket connection) {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            // Nothing left to do with a broken connection
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{" +
+                "server=" + host + ":" + port +
+                ", idle=" + idle.size() +
+                ", available=" + permits.availablePermits() +
+                '}';
+    }
+}
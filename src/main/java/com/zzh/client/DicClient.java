@@ -0,0 +1,204 @@
+package com.zzh.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ * The DicClient class is a thread-safe client library for one dictionary server. Requests are sent over
+ * a bounded {@link ConnectionPool} of kept-alive connections, with connect and read timeouts. When the
+ * server rejects a connection because its queue is full, or answers a request with the code "BUSY" because
+ * its queue or the client's rate limit is full, the request is retried with exponential backoff.
+ * A read-only request that fails on a reused connection is sent again on a new one; other requests are not,
+ * as the server may have applied them before the connection failed.
+ * Every request carries the read timeout as its "deadlineMs", so the server skips requests this client has
+ * already given up on.
+ * {@link #sendAsync} runs requests on the client's own threads, e.g. to keep a Swing thread responsive.
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class DicClient implements Closeable {
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String BUSY = "BUSY";
+    private final ConnectionPool pool;
+    private final ExecutorService executor;
+    private final int readTimeoutMillis;
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long borrowTimeoutMillis;
+
+
+    /**
+     * Constructs a DicClient with default timeouts and retries.
+     *
+     * @param host           the server host
+     * @param port           the server port
+     * @param maxConnections the maximum number of connections to the server
+     */
+    public DicClient(String host, int port, int maxConnections) {
+        this(host, port, maxConnections, 3000, 10_000, 5, 50, 2000);
+    }
+
+
+    /**
+     * Constructs a DicClient.
+     *
+     * @param host                 the server host
+     * @param port                 the server port
+     * @param maxConnections       the maximum number of connections to the server, also the number of async threads
+     * @param connectTimeoutMillis how long to wait for a connection
+     * @param readTimeoutMillis    how long to wait for a response
+     * @param maxRetries           how many times a rejected request is retried
+     * @param initialBackoffMillis the delay before the first retry, doubled for every further retry
+     * @param maxBackoffMillis     the longest delay between retries
+     */
+    public DicClient(String host, int port, int maxConnections, int connectTimeoutMillis, int readTimeoutMillis,
+                     int maxRetries, long initialBackoffMillis, long maxBackoffMillis) {
+        // Connections idle for most of the server's default 5 second keep-alive are not reused
+        this.pool = new ConnectionPool(host, port, maxConnections, connectTimeoutMillis, readTimeoutMillis, 4000);
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.borrowTimeoutMillis = (long) connectTimeoutMillis + readTimeoutMillis;
+        this.executor = Executors.newFixedThreadPool(maxConnections, runnable -> {
+            Thread thread = new Thread(runnable, "dic-client-" + host + ":" + port);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Sends a request and waits for the response.
+     *
+     * @param request the request fields, e.g. "action", "word" and "meaning"
+     * @return the server's response, holding "code" and "msg"
+     * @throws IOException if the request could not be sent or answered
+     */
+    public HashMap<String, String> send(Map<String, String> request) throws IOException {
+        HashMap<String, String> keepAliveRequest = new HashMap<>(request);
+        keepAliveRequest.put("keepAlive", "true");
+        if (readTimeoutMillis > 0) {
+            keepAliveRequest.putIfAbsent("deadlineMs", String.valueOf(readTimeoutMillis));
+        }
+        String requestJSON = objectMapper.writeValueAsString(keepAliveRequest);
+
+        long backoff = initialBackoffMillis;
+        for (int attempt = 0; ; attempt++) {
+            ClientSocket connection;
+            try {
+                connection = pool.borrow(borrowTimeoutMillis);
+            } catch (ServerBusyException e) {
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+                backoff = backOff(backoff);
+                continue;
+            }
+
+            boolean reused = connection.getRequestCount() > 0;
+            HashMap<String, String> response;
+            try {
+                response = connection.exchange(requestJSON);
+            } catch (IOException e) {
+                pool.release(connection, false);
+                // A reused connection may have been closed by the server while idle: retry on a new one.
+                // The server may also have applied the request before failing, so only reads are sent again
+                if (!reused || !isReadOnly(request.get("action")) || attempt >= maxRetries) {
+                    throw e;
+                }
+                continue;
+            }
+            pool.release(connection, true);
+            if (!BUSY.equals(response.get("code"))) {
+                return response;
+            }
+            // Refused under load before it was applied, so any request can be sent again
+            if (attempt >= maxRetries) {
+                throw new ServerBusyException(response.get("msg"));
+            }
+            backoff = backOff(backoff);
+        }
+    }
+
+
+    /**
+     * Sends a request without blocking the calling thread.
+     *
+     * @param request the request fields
+     * @return a future completed with the server's response, or exceptionally with an
+     * {@link UncheckedIOException} wrapping the I/O error
+     */
+    public CompletableFuture<HashMap<String, String>> sendAsync(Map<String, String> request) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return send(request);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+
+    /**
+     * Closes the pooled connections and stops the async threads.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        pool.close();
+    }
+
+
+    /**
+     * @param action the request's action
+     * @return true if sending the request twice has the same effect as sending it once
+     */
+    private static boolean isReadOnly(String action) {
+        return "READ".equals(action) || "LIST".equals(action) || "SCAN".equals(action) || "STATS".equals(action);
+    }
+
+
+    /**
+     * Waits before a retry, with up to half the delay added at random so rejected clients do not all
+     * come back at once.
+     *
+     * @return the delay before the next retry
+     */
+    private long backOff(long backoff) throws IOException {
+        sleep(backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+        return Math.min(backoff * 2, maxBackoffMillis);
+    }
+
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to retry", e);
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "DicClient{" +
+                "pool=" + pool +
+                '}';
+    }
+}
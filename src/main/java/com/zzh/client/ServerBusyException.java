@@ -0,0 +1,20 @@
+package com.zzh.client;
+
+import java.io.IOException;
+
+
+/**
+ * Thrown when the server accepted the TCP connection but closed it before the handshake, which is how
+ * it rejects clients while its request queue is full. Unlike other I/O errors it is worth retrying.
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class ServerBusyException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public ServerBusyException(String message) {
+        super(message);
+    }
+}
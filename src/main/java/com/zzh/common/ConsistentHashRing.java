@@ -0,0 +1,115 @@
+package com.zzh.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ * The ConsistentHashRing class maps words to cluster nodes using consistent hashing with virtual nodes.
+ * Each node is placed on the ring several times so words spread evenly, and adding or removing a node
+ * only moves the words of its neighbouring ring segments. Clients and servers build the ring from the
+ * same node list and virtual node count, so they always agree on the owner of a word.
+ *
+ * <p>
+ * The ring is immutable once built and safe to share between threads.
+ * </p>
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public final class ConsistentHashRing<T> {
+    private final long[] points;
+    private final List<T> owners;
+    private final List<T> nodes;
+
+
+    /**
+     * Builds a ring placing every node at {@code virtualNodes} positions.
+     *
+     * @param nodes        the nodes of the cluster; their toString() identifies them on the ring
+     * @param virtualNodes the number of ring positions per node
+     * @throws IllegalArgumentException if there is no node or virtualNodes is not positive
+     */
+    public ConsistentHashRing(Collection<T> nodes, int virtualNodes) {
+        if (nodes.isEmpty() || virtualNodes < 1) {
+            throw new IllegalArgumentException("A ring needs at least one node and one virtual node per node");
+        }
+        this.nodes = List.copyOf(nodes);
+
+        long[][] entries = new long[this.nodes.size() * virtualNodes][];
+        int n = 0;
+        for (int node = 0; node < this.nodes.size(); node++) {
+            String name = this.nodes.get(node).toString();
+            for (int v = 0; v < virtualNodes; v++) {
+                entries[n++] = new long[]{hash(name + "#" + v), node};
+            }
+        }
+        Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+
+        this.points = new long[entries.length];
+        List<T> ringOwners = new ArrayList<>(entries.length);
+        for (int i = 0; i < entries.length; i++) {
+            points[i] = entries[i][0];
+            ringOwners.add(this.nodes.get((int) entries[i][1]));
+        }
+        this.owners = ringOwners;
+    }
+
+
+    /**
+     * Finds the node owning a word: the first ring position clockwise from the word's hash.
+     *
+     * @param key the word
+     * @return the owning node
+     */
+    public T nodeFor(String key) {
+        int i = Arrays.binarySearch(points, hash(key));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners.get(i == points.length ? 0 : i);
+    }
+
+
+    /**
+     * @return the distinct nodes of the ring, in the order they were given
+     */
+    public List<T> getNodes() {
+        return nodes;
+    }
+
+
+    /**
+     * 64-bit FNV-1a over the characters followed by the MurmurHash3 finalizer, giving a stable
+     * hash that does not depend on the JVM and spreads short, similar words well. The server's Bloom
+     * filter uses it too.
+     *
+     * @param s the string to hash
+     * @return the position of the string on the ring
+     */
+    public static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+
+    @Override
+    public String toString() {
+        return "ConsistentHashRing{" +
+                "nodes=" + nodes +
+                ", points=" + points.length +
+                '}';
+    }
+}
@@ -0,0 +1,154 @@
+package com.zzh.server;
+
+import com.zzh.server.store.CountingBloomFilter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The BloomFilteredDictionary class answers READ requests for words that certainly do not exist without
+ * reading the wrapped {@link DicStore}. It keeps a {@link CountingBloomFilter} of all words, filled from a
+ * snapshot and then kept up to date as a listener of the dictionary, so deleted words leave the filter too.
+ *
+ * <p>
+ * A word the filter lets through is read as usual. When it turns out to be missing after all, that is
+ * counted as a false positive; {@code bloom.falsePositivePpm} is the share of lookups of missing words
+ * that still reached the dictionary, in parts per million.
+ * </p>
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class BloomFilteredDictionary implements DicStore, MutationListener {
+    private final DicStore dictionary;
+    private final CountingBloomFilter filter;
+    private final LongAdder negatives = ServerMetrics.counter("bloom.negatives");
+    private final LongAdder falsePositives = ServerMetrics.counter("bloom.falsePositives");
+
+
+    /**
+     * Constructs a BloomFilteredDictionary. Must be created before the dictionary is changed concurrently,
+     * so no change is missed between filling the filter and listening for changes.
+     *
+     * @param dictionary               the dictionary holding the words
+     * @param expectedWords            the number of words the filter is sized for
+     * @param falsePositiveProbability the wanted share of missing words that still reach the dictionary
+     */
+    public BloomFilteredDictionary(DicStore dictionary, long expectedWords, double falsePositiveProbability) {
+        this.dictionary = dictionary;
+        this.filter = new CountingBloomFilter(expectedWords, falsePositiveProbability);
+        // The counters are updated with compare-and-set, so the words can be added from all cores at once
+        dictionary.snapshot().keySet().parallelStream().forEach(filter::add);
+        dictionary.addMutationListener(this);
+        ServerMetrics.gauge("bloom.falsePositivePpm", () -> {
+            long passed = falsePositives.sum();
+            long total = passed + negatives.sum();
+            return total == 0 ? 0 : passed * 1_000_000 / total;
+        });
+        ServerMetrics.gauge("bloom.expectedFalsePositivePpm",
+                            () -> Math.round(filter.expectedFalsePositiveProbability() * 1_000_000));
+    }
+
+
+    @Override
+    public HashMap<String, String> createWord(String key, String meaning) {
+        return dictionary.createWord(key, meaning);
+    }
+
+
+    @Override
+    public HashMap<String, String> readWord(String key) {
+        if (!filter.mightContain(key)) {
+            negatives.increment();
+            HashMap<String, String> response = new HashMap<>();
+            response.put("code", "ERROR");
+            response.put("msg", "(" + key + ") does not exist in the Dictionary!");
+            return response;
+        }
+        HashMap<String, String> response = dictionary.readWord(key);
+        if (!"SUCCESS".equals(response.get("code"))) {
+            falsePositives.increment();
+        }
+        return response;
+    }
+
+
+    @Override
+    public HashMap<String, String> updateWord(String key, String curMeaning, String updatedMeaning) {
+        return dictionary.updateWord(key, curMeaning, updatedMeaning);
+    }
+
+
+    @Override
+    public HashMap<String, String> deleteWord(String key) {
+        return dictionary.deleteWord(key);
+    }
+
+
+    @Override
+    public HashMap<String, String> appendWord(String key, String newMeaning) {
+        return dictionary.appendWord(key, newMeaning);
+    }
+
+
+    /**
+     * Keeps the filter in step with the dictionary. Only added and removed words change the filter.
+     */
+    @Override
+    public void onMutation(String action, String key, String meaning) {
+        if (meaning == null) {
+            filter.remove(key);
+        } else if ("CREATE".equals(action)) {
+            filter.add(key);
+        }
+    }
+
+
+    @Override
+    public void addMutationListener(MutationListener listener) {
+        dictionary.addMutationListener(listener);
+    }
+
+
+    @Override
+    public void applyMutation(String action, String key, String meaning) {
+        dictionary.applyMutation(action, key, meaning);
+    }
+
+
+    @Override
+    public int replaceAll(Map<String, String> entries) {
+        return dictionary.replaceAll(entries);
+    }
+
+
+    @Override
+    public Map<String, String> snapshot() {
+        return dictionary.snapshot();
+    }
+
+
+    @Override
+    public List<String> scanKeys(String from, boolean inclusive, int limit) {
+        return dictionary.scanKeys(from, inclusive, limit);
+    }
+
+
+    @Override
+    public void close() {
+        dictionary.close();
+    }
+
+
+    @Override
+    public String toString() {
+        return "BloomFilteredDictionary{" +
+                "dictionary=" + dictionary +
+                ", filter=" + filter +
+                '}';
+    }
+}
@@ -0,0 +1,200 @@
+package com.zzh.server;
+
+import com.zzh.server.replication.MutationLog;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The ChangeFeed class streams the dictionary's changes to clients that sent a SUBSCRIBE request, so they
+ * learn about changes as they happen instead of polling with READ requests. Changes are taken from a
+ * {@link MutationLog} and sent as one JSON line each, carrying the change's sequence number. A client can
+ * resume after a disconnect by subscribing from the number after the last change it received, as long as
+ * that change is still in the log, and may ask for the words starting with a prefix only. Sequence numbers
+ * start over when the server restarts, so a number beyond the latest change is refused.
+ *
+ * <p>
+ * A subscription runs on its own thread, outside the worker pool, since it never ends by itself. Slow
+ * subscribers are disconnected rather than buffered for: one that falls so far behind that its next change
+ * has left the log, or that stops reading until a write times out, is sent an error if possible and closed.
+ * </p>
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class ChangeFeed {
+    private static final int BATCH_SIZE = 256;
+    private static final long HEARTBEAT_MILLIS = 1000;
+    private final MutationLog log;
+    private final int maxSubscribers;
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final LongAdder events = ServerMetrics.counter("subscribe.events");
+    private final LongAdder slowDisconnects = ServerMetrics.counter("subscribe.slowDisconnects");
+
+
+    /**
+     * The connection of a subscriber, as seen by the feed.
+     */
+    public interface Connection {
+        /**
+         * @return the stream the lines for the subscriber are written to
+         */
+        OutputStream out();
+
+        /**
+         * Sends everything written to {@link #out()}.
+         *
+         * @throws SocketTimeoutException if the subscriber does not read it within the write timeout
+         * @throws IOException                     if the connection is broken
+         */
+        void flush() throws IOException;
+
+        /**
+         * @return true if the subscriber has closed the connection
+         * @throws IOException if the connection is broken
+         */
+        boolean isClosed() throws IOException;
+
+        /**
+         * Closes the connection and releases its resources.
+         */
+        void close();
+    }
+
+
+    /**
+     * Constructs a ChangeFeed. The log must already be registered as a listener of the dictionary.
+     *
+     * @param log            the log of changes applied to the dictionary
+     * @param maxSubscribers the maximum number of subscriptions served at once
+     */
+    public ChangeFeed(MutationLog log, int maxSubscribers) {
+        this.log = log;
+        this.maxSubscribers = maxSubscribers;
+        ServerMetrics.gauge("subscribe.active", subscribers::get);
+    }
+
+
+    /**
+     * Starts streaming changes to a subscriber in a new thread. The request may contain a "prefix" the words
+     * must start with, and "fromSeq", the sequence number of the first change to send; by default only
+     * changes made after subscribing are sent.
+     *
+     * @param request    the SUBSCRIBE request
+     * @param connection the subscriber's connection, owned by the subscription from now on
+     * @param name       the name of the subscription's thread
+     * @return false if there are too many subscriptions already; the connection is then left untouched
+     */
+    public boolean subscribe(Map<String, String> request, Connection connection, String name) {
+        if (subscribers.incrementAndGet() > maxSubscribers) {
+            subscribers.decrementAndGet();
+            return false;
+        }
+        String prefix = request.get("prefix") == null ? "" : request.get("prefix");
+        String fromSeq = request.get("fromSeq");
+        Thread stream = new Thread(() -> {
+            try {
+                stream(connection, prefix, fromSeq);
+            } finally {
+                subscribers.decrementAndGet();
+                connection.close();
+            }
+        }, name);
+        stream.setDaemon(true);
+        stream.start();
+        return true;
+    }
+
+
+    /**
+     * Sends the subscription's confirmation and then its changes until the subscriber disconnects or is
+     * disconnected.
+     */
+    private void stream(Connection connection, String prefix, String fromSeq) {
+        try {
+            long seq;
+            try {
+                seq = fromSeq == null || fromSeq.isEmpty() ? log.nextSeq() : Long.parseLong(fromSeq);
+            } catch (NumberFormatException e) {
+                send(connection, message("ERROR", "msg", "fromSeq must be a number"));
+                return;
+            }
+            // A number the log has not reached was handed out before the server restarted
+            if (seq > log.nextSeq()) {
+                send(connection, message("ERROR", "msg", "Change " + seq + " has not been made yet, "
+                        + "please read the words again and subscribe from the current position"));
+                return;
+            }
+            send(connection, message("SUCCESS", "seq", String.valueOf(seq)));
+
+            while (!connection.isClosed()) {
+                List<MutationLog.Entry> entries = log.readFrom(seq, BATCH_SIZE, HEARTBEAT_MILLIS);
+                if (entries == null) {
+                    slowDisconnects.increment();
+                    send(connection, message("ERROR", "msg", "Change " + seq + " is no longer available, "
+                            + "please read the words again and subscribe from the current position"));
+                    return;
+                }
+                for (MutationLog.Entry entry : entries) {
+                    if (entry.key().startsWith(prefix)) {
+                        Map<String, String> change = message("CHANGE", "seq", String.valueOf(entry.seq()));
+                        change.put("action", entry.action());
+                        change.put("word", entry.key());
+                        change.put("meaning", entry.meaning());
+                        write(connection, change);
+                        events.increment();
+                    }
+                    seq = entry.seq() + 1;
+                }
+                if (entries.isEmpty()) {
+                    write(connection, message("HEARTBEAT", "seq", String.valueOf(seq - 1)));
+                }
+                connection.flush();
+            }
+        } catch (SocketTimeoutException e) {
+            slowDisconnects.increment();
+            ServerLog.info(Thread.currentThread().getName() + " Disconnected: " + e.getMessage());
+        } catch (IOException e) {
+            ServerLog.info(Thread.currentThread().getName() + " Disconnected");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private static Map<String, String> message(String code, String field, String value) {
+        Map<String, String> message = new LinkedHashMap<>();
+        message.put("code", code);
+        message.put(field, value);
+        return message;
+    }
+
+
+    private static void write(Connection connection, Map<String, String> message) throws IOException {
+        RequestHandler.objectMapper.writeValue(connection.out(), message);
+        connection.out().write('\n');
+    }
+
+
+    private static void send(Connection connection, Map<String, String> message) throws IOException {
+        write(connection, message);
+        connection.flush();
+    }
+
+
+    @Override
+    public String toString() {
+        return "ChangeFeed{" +
+                "subscribers=" + subscribers.get() +
+                ", log=" + log +
+                '}';
+    }
+}
@@ -0,0 +1,134 @@
+package com.zzh.server;
+
+import com.zzh.server.pool.BufferPool;
+import com.zzh.server.pool.DicPool;
+import com.zzh.server.pool.Lane;
+import com.zzh.server.pool.RateLimiter;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The DicServer class runs the accept loop of the dictionary server. Every accepted client
+ * connection is wrapped in a {@link SocketRunner}, stamped with its accept time, and handed to the
+ * {@link DicPool}. Connections arriving while the pool's queue is full are closed and counted, and so are
+ * connections from a client opening more of them than its {@link RateLimiter} allows.
+ * It is used both by the {@link ServerGUI} window and by the headless mode. All connections share one
+ * {@link BufferPool} for their socket I/O. {@link #shutdown(long)} stops the accept loop and drains the pool.
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class DicServer {
+    private static int counter = 0;
+    private final int port;
+    private final RequestHandler requestHandler;
+    private final DicPool dicPool;
+    private volatile ServerSocketChannel server;
+    private final BufferPool bufferPool = new BufferPool(ServerConfig.bufferSize());
+    private final RateLimiter rateLimiter = new RateLimiter(
+            new double[]{ServerConfig.connectionRate(), ServerConfig.readRate(), ServerConfig.mutationRate()},
+            ServerConfig.rateBurstSeconds(), ServerConfig.rateMaxClients());
+    private final LongAdder queueFullDrops = ServerMetrics.counter("drops.queueFull");
+
+
+    /**
+     * Constructs a DicServer for the given port, dictionary and thread pool.
+     *
+     * @param port           server port
+     * @param requestHandler the handler processing the requests
+     * @param dicPool        the thread pool for handling client connections
+     */
+    public DicServer(int port, RequestHandler requestHandler, DicPool dicPool) {
+        this.port = port;
+        this.requestHandler = requestHandler;
+        this.dicPool = dicPool;
+        ServerMetrics.gauge("buffers.allocated", bufferPool::getAllocated);
+    }
+
+
+    /**
+     * Starts the server and continuously listens for client connections.
+     * Creates a new task in the pool for each incoming client connection.
+     */
+    public void serve() {
+        // Try to open a ServerSocketChannel on the specified port, automatically close
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port));
+            this.server = server;
+            System.out.println("Waiting for client connection-");
+
+            // Continuously wait for client connections, until the server is shut down
+            while (!dicPool.isShutdown()) {
+                // Accept a client connection; returns a SocketChannel representing the client
+                SocketChannel clientChannel = server.accept();
+                long acceptedAt = System.nanoTime();
+                counter++;
+                System.out.println("Reqeuest: " + counter + " Connected");
+
+                // A client opening connections faster than its rate is turned away before taking a queue slot
+                InetAddress clientAddress = ((InetSocketAddress) clientChannel.getRemoteAddress()).getAddress();
+                if (!rateLimiter.tryAcquire(clientAddress, Lane.INTAKE)) {
+                    ServerLog.info("A New Client Connection Rejected: Too Many Connections From " + clientAddress);
+                    clientChannel.close();
+                    continue;
+                }
+
+                // Handle the client connection using the custom thread pool
+                try {
+                    dicPool.execute(new SocketRunner(counter, requestHandler, clientChannel, bufferPool, dicPool,
+                                                     rateLimiter, clientAddress, acceptedAt));
+                } catch (IllegalStateException e) {
+                    // Under overload a dialog per rejection would flood the window, so rejections are only logged
+                    queueFullDrops.increment();
+                    ServerLog.info("A New Client Connection Rejected: Exceeded Maximum ServerLoad");
+                    clientChannel.close();
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // Closed by shutdown()
+            System.out.println("Stopped accepting client connections");
+        } catch (IOException e) {
+            // Handle any IOExceptions that may occur
+            ServerLog.error("Error In Socket Creation/Connection, Please Try Again", "Error");
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Stops accepting connections, then lets the pool finish the connections and requests it has taken on.
+     *
+     * @param drainMillis the longest time to wait for the taken on work
+     * @return true if all work was finished in time
+     */
+    public boolean shutdown(long drainMillis) {
+        ServerSocketChannel server = this.server;
+        try {
+            if (server != null) {
+                server.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return dicPool.shutdown(drainMillis);
+    }
+
+
+    @Override
+    public String toString() {
+        return "DicServer{" +
+                "port=" + port +
+                ", requestHandler=" + requestHandler +
+                ", bufferPool=" + bufferPool +
+                ", rateLimiter=" + rateLimiter +
+                '}';
+    }
+}
@@ -0,0 +1,118 @@
+package com.zzh.server;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The DicStore interface describes the word operations the server can perform on a dictionary.
+ * Every operation returns a response map holding a "code" (SUCCESS or ERROR) and a "msg",
+ * which is sent back to the client as JSON.
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public interface DicStore {
+
+    /**
+     * Creates a new word entry.
+     *
+     * @param key     the word to be added
+     * @param meaning the meaning of the word
+     * @return a response indicating success or failure of the operation
+     */
+    HashMap<String, String> createWord(String key, String meaning);
+
+
+    /**
+     * Reads the meaning of a word.
+     *
+     * @param key the word to be read
+     * @return a response containing the word's meaning or an error message
+     */
+    HashMap<String, String> readWord(String key);
+
+
+    /**
+     * Replaces part of the meaning of an existing word.
+     *
+     * @param key            the word to be updated
+     * @param curMeaning     the current meaning of the word
+     * @param updatedMeaning the new meaning to replace the current meaning
+     * @return a response indicating success or failure of the operation
+     */
+    HashMap<String, String> updateWord(String key, String curMeaning, String updatedMeaning);
+
+
+    /**
+     * Deletes a word.
+     *
+     * @param key the word to be deleted
+     * @return a response indicating success or failure of the operation
+     */
+    HashMap<String, String> deleteWord(String key);
+
+
+    /**
+     * Appends a new meaning to an existing word.
+     *
+     * @param key        the word to be appended
+     * @param newMeaning the new meaning to add to the word
+     * @return a response indicating success or failure of the operation
+     */
+    HashMap<String, String> appendWord(String key, String newMeaning);
+
+
+    /**
+     * Registers a listener notified of every change to the words.
+     *
+     * @param listener the listener to add
+     */
+    void addMutationListener(MutationListener listener);
+
+
+    /**
+     * Applies a change that was already validated elsewhere, e.g. by the primary server of a replica.
+     *
+     * @param action  the operation that caused the change
+     * @param key     the word
+     * @param meaning the new meaning, or null to remove the word
+     */
+    void applyMutation(String action, String key, String meaning);
+
+
+    /**
+     * Replaces all words with the given entries. Only the differences are applied,
+     * and listeners are notified for each word that was added, changed or removed.
+     *
+     * @param entries the complete new content
+     * @return the number of words that were added, changed or removed
+     */
+    int replaceAll(Map<String, String> entries);
+
+
+    /**
+     * @return a copy of all words and meanings, which later changes do not affect
+     */
+    Map<String, String> snapshot();
+
+
+    /**
+     * Lists words in sorted order.
+     *
+     * @param from      the word to start at, or null to start at the first word
+     * @param inclusive whether {@code from} itself is listed if it exists
+     * @param limit     the maximum number of words to return
+     * @return up to {@code limit} words in ascending order
+     */
+    List<String> scanKeys(String from, boolean inclusive, int limit);
+
+
+    /**
+     * Writes out any change that is not in the file yet and releases the files. Called once when the server
+     * shuts down, after the last request has been answered.
+     */
+    void close();
+}
@@ -1,10 +1,31 @@
 package com.zzh.server;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zzh.server.store.MeaningCodec;
+import com.zzh.server.store.PersistentHashMap;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 //not necessary since dictionary hashmap is not accessed outside of this class
 //import java.util.concurrent.ConcurrentHashMap;
@@ -17,12 +38,59 @@ import java.util.HashMap;
  * to ensure thread-safe operations.
  *
  * <p>
+ * The words are kept in an immutable {@link PersistentHashMap}. Writers are serialised by the
+ * dictionary's lock and publish every change as a new version through a volatile field, while readers
+ * never lock: they work on whichever version was current when they started. Exports and scans therefore
+ * see a consistent point-in-time view without stalling writers.
+ * </p>
+ *
+ * <p>
+ * Changes are written to the file by group commit. A writer applies its change under the lock, releases
+ * it and then waits until a file write covers its version. The first waiter writes the latest version,
+ * which includes every change made meanwhile, so a burst of changes costs one file write and repeated
+ * changes to the same word are written once. Callers are acknowledged only after their change is on disk.
+ * </p>
+ *
+ * <p>
+ * With {@code -Ddic.compress=true} meanings are kept compressed by a {@link MeaningCodec} trained on the
+ * meanings loaded at startup, and only decompressed when they are read. The file is then written gzipped;
+ * both plain and gzipped files are read.
+ * </p>
+ *
+ * <p>
+ * The file is replaced atomically, so a reader of the file, like the {@link DictionaryReloader}, never
+ * sees it half written. The last few files written are remembered by checksum, which lets the reloader
+ * tell the server's own writes from files put there by someone else.
+ * </p>
+ *
+ * <p>
  * Created by Zhonghe Zheng, Student ID: 825612.
  * </p>
  */
-public class Dictionary {
-    private HashMap<String, String> dictionary;
+public class Dictionary implements DicStore {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final TypeReference<HashMap<String, String>> ENTRIES = new TypeReference<>() {
+    };
+    private static final int RECENT_WRITES = 8;
+    // Meanings as stored by the codec, or plain Strings without one
+    private volatile PersistentHashMap<String, Object> dictionary;
+    private final MeaningCodec codec;
     private String filePath;
+    private final NavigableSet<String> sortedIndex = new ConcurrentSkipListSet<>();
+    private final List<MutationListener> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder flushes = ServerMetrics.counter("persist.flushes");
+    private final LongAdder coalesced = ServerMetrics.counter("persist.coalesced");
+    private final LongAdder rawBytes = ServerMetrics.counter("compression.rawBytes");
+    private final LongAdder storedBytes = ServerMetrics.counter("compression.storedBytes");
+    private final LongAdder decodes = ServerMetrics.counter("compression.decodes");
+    private final LongAdder decodeNanos = ServerMetrics.counter("compression.decodeNanos");
+    private long version;
+    private final Object flushLock = new Object();
+    private long persistedVersion;
+    private boolean flushing;
+    private HashMap<String, String> flushError;
+    private final long[] recentWrites = new long[RECENT_WRITES];
+    private int recentWriteIndex;
 
 
     /**
@@ -32,7 +100,31 @@ public class Dictionary {
      * @throws IOException if there is an error reading the file
      */
     public Dictionary(String filePath) throws IOException {
-        this.dictionary = readJSONDictionary(filePath);
+        this(filePath, readJSONDictionary(filePath));
+    }
+
+
+    /**
+     * Constructs a Dictionary object from entries that were already loaded, persisting to the given file.
+     * Used by {@link ShardedDictionary} when partitioning an existing dictionary into shards.
+     *
+     * @param filePath   the path to the JSON file this dictionary is written to
+     * @param dictionary the initial words and meanings
+     */
+    Dictionary(String filePath, HashMap<String, String> dictionary) {
+        // The sorted index does not depend on the map, so another thread builds it meanwhile
+        CompletableFuture<Void> indexed = CompletableFuture.runAsync(() -> sortedIndex.addAll(dictionary.keySet()));
+        this.codec = ServerConfig.compressMeanings() ? MeaningCodec.train(dictionary.values()) : null;
+        if (codec == null) {
+            this.dictionary = PersistentHashMap.of(dictionary);
+        } else {
+            // Meanings are compressed independently of each other, so all cores share the work
+            Map<String, Object> stored = new ConcurrentHashMap<>(dictionary.size() * 4 / 3 + 1);
+            dictionary.entrySet().parallelStream()
+                      .forEach(entry -> stored.put(entry.getKey(), encode(null, entry.getValue())));
+            this.dictionary = PersistentHashMap.of(stored);
+        }
+        indexed.join();
         this.filePath = filePath;
     }
 
@@ -45,22 +137,30 @@ public class Dictionary {
      * @param meaning the meaning of the word
      * @return a response indicating success or failure of the operation
      */
-    public synchronized HashMap<String, String> createWord(String key, String meaning) {
+    public HashMap<String, String> createWord(String key, String meaning) {
         HashMap<String, String> response = new HashMap<>();
         response.put("code", "ERROR");
-        if (dictionary.containsKey(key)) {
-            response.put("msg",
-                         "(" + key + ") already exist in the Dictionary! You can try update or append new meaning(s).");
-        } else if (meaning == null || meaning.isEmpty()) {
-            response.put("msg", "(" + key + ") Word meaning(s) cannot be null or empty.");
-        } else {
-            dictionary.put(key, meaning);
-            response.put("msg", "(" + key + ") Word meaning(s) successfully created.");
-            response.put("code", "SUCCESS");
-
-            HashMap<String, String> writeResponse = this.writeJSONDictionary();
-            if (writeResponse != null) return writeResponse;
+        long written;
+        long lockRequested = System.nanoTime();
+        synchronized (this) {
+            RequestTrace.record(RequestTrace.Phase.LOCK_WAIT, lockRequested);
+            if (dictionary.containsKey(key)) {
+                response.put("msg",
+                             "(" + key + ") already exist in the Dictionary! You can try update or append new meaning(s).");
+                return response;
+            } else if (meaning == null || meaning.isEmpty()) {
+                response.put("msg", "(" + key + ") Word meaning(s) cannot be null or empty.");
+                return response;
+            }
+            dictionary = dictionary.plus(key, encode(null, meaning));
+            publish("CREATE", key, meaning);
+            written = ++version;
         }
+        response.put("msg", "(" + key + ") Word meaning(s) successfully created.");
+        response.put("code", "SUCCESS");
+
+        HashMap<String, String> writeResponse = this.persist(written);
+        if (writeResponse != null) return writeResponse;
         return response;
     }
 
@@ -68,11 +168,12 @@ public class Dictionary {
     /**
      * Reads the meaning of a word from the dictionary.
      * If the word does not exist, it returns an error response.
+     * Reading does not lock the dictionary.
      *
      * @param key the word to be read
      * @return a response containing the word's meaning or an error message
      */
-    public synchronized HashMap<String, String> readWord(String key) {
+    public HashMap<String, String> readWord(String key) {
         //Delay request to test for concurrent access
         for (int i = 0; i < 2; i++) {
             try {
@@ -85,7 +186,7 @@ public class Dictionary {
 
         HashMap<String, String> response = new HashMap<>();
         response.put("code", "ERROR");
-        String value = this.dictionary.get(key);
+        String value = decode(this.dictionary.get(key));
         if (value == null || value.isEmpty()) {
             response.put("msg", "(" + key + ") does not exist in the Dictionary!");
         } else {
@@ -105,27 +206,37 @@ public class Dictionary {
      * @param updatedMeaning the new meaning to replace the current meaning
      * @return a response indicating success or failure of the operation
      */
-    public synchronized HashMap<String, String> updateWord(String key, String curMeaning, String updatedMeaning) {
+    public HashMap<String, String> updateWord(String key, String curMeaning, String updatedMeaning) {
         HashMap<String, String> response = new HashMap<>();
         response.put("code", "ERROR");
-        //Server side validation for word and meanings
-        if (!dictionary.containsKey(key)) {
-            response.put("msg", "(" + key + ") does not exist in the Dictionary!");
-        } else if (curMeaning == null || updatedMeaning == null || curMeaning.isEmpty() || updatedMeaning.isEmpty()) {
-            response.put("msg", "Word meaning(s) cannot be empty.");
-        } else {
-            String originalString = this.dictionary.get(key);
+        long written;
+        long lockRequested = System.nanoTime();
+        synchronized (this) {
+            RequestTrace.record(RequestTrace.Phase.LOCK_WAIT, lockRequested);
+            //Server side validation for word and meanings
+            if (!dictionary.containsKey(key)) {
+                response.put("msg", "(" + key + ") does not exist in the Dictionary!");
+                return response;
+            } else if (curMeaning == null || updatedMeaning == null || curMeaning.isEmpty() || updatedMeaning.isEmpty()) {
+                response.put("msg", "Word meaning(s) cannot be empty.");
+                return response;
+            }
+            Object stored = this.dictionary.get(key);
+            String originalString = decode(stored);
             if (!originalString.contains(curMeaning)) {
                 response.put("msg", "Existing meaning not found for the word specified!");
-            } else {
-                dictionary.put(key, originalString.replace(curMeaning, updatedMeaning));
-                response.put("msg", "(" + key + ") has been updated successfully!");
-                response.put("code", "SUCCESS");
-
-                HashMap<String, String> writeResponse = this.writeJSONDictionary();
-                if (writeResponse != null) return writeResponse;
+                return response;
             }
+            String updatedString = originalString.replace(curMeaning, updatedMeaning);
+            dictionary = dictionary.plus(key, encode(stored, updatedString));
+            publish("UPDATE", key, updatedString);
+            written = ++version;
         }
+        response.put("msg", "(" + key + ") has been updated successfully!");
+        response.put("code", "SUCCESS");
+
+        HashMap<String, String> writeResponse = this.persist(written);
+        if (writeResponse != null) return writeResponse;
         return response;
     }
 
@@ -137,19 +248,27 @@ public class Dictionary {
      * @param key the word to be deleted
      * @return a response indicating success or failure of the operation
      */
-    public synchronized HashMap<String, String> deleteWord(String key) {
+    public HashMap<String, String> deleteWord(String key) {
         HashMap<String, String> response = new HashMap<>();
         response.put("code", "ERROR");
-        if (!dictionary.containsKey(key)) {
-            response.put("msg", "(" + key + ") does not exist in the Dictionary!");
-        } else {
-            dictionary.remove(key);
-            response.put("msg", "(" + key + ") has been deleted successfully!");
-            response.put("code", "SUCCESS");
-
-            HashMap<String, String> writeResponse = this.writeJSONDictionary();
-            if (writeResponse != null) return writeResponse;
+        long written;
+        long lockRequested = System.nanoTime();
+        synchronized (this) {
+            RequestTrace.record(RequestTrace.Phase.LOCK_WAIT, lockRequested);
+            if (!dictionary.containsKey(key)) {
+                response.put("msg", "(" + key + ") does not exist in the Dictionary!");
+                return response;
+            }
+            encode(dictionary.get(key), null);
+            dictionary = dictionary.minus(key);
+            publish("DELETE", key, null);
+            written = ++version;
         }
+        response.put("msg", "(" + key + ") has been deleted successfully!");
+        response.put("code", "SUCCESS");
+
+        HashMap<String, String> writeResponse = this.persist(written);
+        if (writeResponse != null) return writeResponse;
         return response;
     }
 
@@ -162,52 +281,345 @@ public class Dictionary {
      * @param newMeaning the new meaning to add to the word
      * @return a response indicating success or failure of the operation
      */
-    public synchronized HashMap<String, String> appendWord(String key, String newMeaning) {
+    public HashMap<String, String> appendWord(String key, String newMeaning) {
         HashMap<String, String> response = new HashMap<>();
         response.put("code", "ERROR");
-
-        if (!dictionary.containsKey(key)) {
-            response.put("msg", "(" + key + ") does not exist in the Dictionary!");
-        } else if (newMeaning == null || newMeaning.isEmpty()) {
-            response.put("msg", "New word meaning cannot be empty.");
-        } else {
-            String originalString = this.dictionary.get(key);
+        long written;
+        long lockRequested = System.nanoTime();
+        synchronized (this) {
+            RequestTrace.record(RequestTrace.Phase.LOCK_WAIT, lockRequested);
+            if (!dictionary.containsKey(key)) {
+                response.put("msg", "(" + key + ") does not exist in the Dictionary!");
+                return response;
+            } else if (newMeaning == null || newMeaning.isEmpty()) {
+                response.put("msg", "New word meaning cannot be empty.");
+                return response;
+            }
+            Object stored = this.dictionary.get(key);
+            String originalString = decode(stored);
             if (originalString.contains(newMeaning)) {
                 response.put("msg", "Meaning already exist for the word specified!");
-            } else {
-                originalString += newMeaning;
-                this.dictionary.put(key, originalString);
-                response.put("msg", "New word meaning has been added to (" + key + ") successfully!");
-                response.put("code", "SUCCESS");
-
-                HashMap<String, String> writeResponse = this.writeJSONDictionary();
-                if (writeResponse != null) return writeResponse;
+                return response;
             }
+            originalString += newMeaning;
+            this.dictionary = this.dictionary.plus(key, encode(stored, originalString));
+            publish("APPEND", key, originalString);
+            written = ++version;
         }
+        response.put("msg", "New word meaning has been added to (" + key + ") successfully!");
+        response.put("code", "SUCCESS");
+
+        HashMap<String, String> writeResponse = this.persist(written);
+        if (writeResponse != null) return writeResponse;
         return response;
     }
 
 
+    @Override
+    public void addMutationListener(MutationListener listener) {
+        listeners.add(listener);
+    }
+
+
+    @Override
+    public void applyMutation(String action, String key, String meaning) {
+        long written;
+        synchronized (this) {
+            // A change may arrive twice, so only what actually changes is applied and reported
+            Object stored = dictionary.get(key);
+            String previous = decode(stored);
+            if (meaning == null ? previous == null : meaning.equals(previous)) {
+                return;
+            }
+            Object updated = encode(stored, meaning);
+            dictionary = meaning == null ? dictionary.minus(key) : dictionary.plus(key, updated);
+            publish(meaning == null ? "DELETE" : previous == null ? "CREATE" : action, key, meaning);
+            written = ++version;
+        }
+        persist(written);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * The new content is built aside and published as a single new version, so readers see
+     * either all of the old words or all of the new ones.
+     */
+    @Override
+    public int replaceAll(Map<String, String> entries) {
+        List<String[]> changes = new ArrayList<>();
+        // The diff is worked out without the lock, so writers only wait if another writer got in meanwhile
+        PersistentHashMap<String, Object> base = dictionary;
+        PersistentHashMap<String, Object> updated = diff(base, entries, changes);
+        long written;
+        synchronized (this) {
+            if (dictionary != base) {
+                changes.clear();
+                base = dictionary;
+                updated = diff(base, entries, changes);
+            }
+            if (changes.isEmpty()) {
+                return 0;
+            }
+            dictionary = updated;
+            for (String[] change : changes) {
+                account(base.get(change[1]), updated.get(change[1]));
+                publish(change[0], change[1], change[2]);
+            }
+            written = ++version;
+        }
+        persist(written);
+        return changes.size();
+    }
+
+
+    /**
+     * Builds the version holding exactly the given entries from an existing version.
+     *
+     * @param current the existing version
+     * @param entries the complete new content
+     * @param changes receives the action, word and new meaning of every word that differs
+     * @return the new version
+     */
+    private PersistentHashMap<String, Object> diff(PersistentHashMap<String, Object> current,
+                                                   Map<String, String> entries, List<String[]> changes) {
+        PersistentHashMap<String, Object> updated = current;
+        for (String key : current.keySet()) {
+            if (!entries.containsKey(key)) {
+                updated = updated.minus(key);
+                changes.add(new String[]{"DELETE", key, null});
+            }
+        }
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            String previous = decode(current.get(entry.getKey()));
+            if (!entry.getValue().equals(previous)) {
+                updated = updated.plus(entry.getKey(), codec == null ? entry.getValue() : codec.encode(entry.getValue()));
+                changes.add(new String[]{previous == null ? "CREATE" : "UPDATE", entry.getKey(), entry.getValue()});
+            }
+        }
+        return updated;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * This is the current immutable version, so it is returned without copying or locking.
+     * Compressed meanings are decompressed as they are read from it.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, String> snapshot() {
+        PersistentHashMap<String, Object> current = dictionary;
+        return codec == null ? (Map<String, String>) (Map<String, ?>) current : codec.decoded(current);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * Words come from a concurrent sorted index, so listing never blocks writers.
+     */
+    @Override
+    public List<String> scanKeys(String from, boolean inclusive, int limit) {
+        List<String> keys = new ArrayList<>(Math.min(limit, 1024));
+        for (String key : from == null ? sortedIndex : sortedIndex.tailSet(from, inclusive)) {
+            if (keys.size() == limit) {
+                break;
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+
     /**
-     * Reads the dictionary from a JSON file.
+     * Turns a meaning into the value stored in the map and updates the compression metrics for the
+     * stored value it replaces. Called while holding this dictionary's lock.
+     *
+     * @param previous the stored value being replaced, or null for a new word
+     * @param meaning  the new meaning, or null if the word is removed
+     * @return the value to store
+     */
+    private Object encode(Object previous, String meaning) {
+        if (codec == null) {
+            return meaning;
+        }
+        Object stored = meaning == null ? null : codec.encode(meaning);
+        account(previous, stored);
+        return stored;
+    }
+
+
+    private void account(Object previous, Object stored) {
+        if (codec != null) {
+            rawBytes.add(MeaningCodec.rawSize(stored) - MeaningCodec.rawSize(previous));
+            storedBytes.add(MeaningCodec.storedSize(stored) - MeaningCodec.storedSize(previous));
+        }
+    }
+
+
+    /**
+     * @param stored a value of the map, or null
+     * @return the meaning it holds, or null
+     */
+    private String decode(Object stored) {
+        if (codec == null || !(stored instanceof byte[])) {
+            return (String) stored;
+        }
+        long start = System.nanoTime();
+        String meaning = codec.decode(stored);
+        decodes.increment();
+        decodeNanos.add(System.nanoTime() - start);
+        return meaning;
+    }
+
+
+    /**
+     * Updates the sorted index and notifies the listeners of a change. Called while holding this
+     * dictionary's lock, after the new version has been published.
+     *
+     * @param action  the operation that caused the change
+     * @param key     the word
+     * @param meaning the new meaning, or null if the word was removed
+     */
+    private void publish(String action, String key, String meaning) {
+        if (meaning == null) {
+            sortedIndex.remove(key);
+        } else {
+            sortedIndex.add(key);
+        }
+        for (MutationListener listener : listeners) {
+            listener.onMutation(action, key, meaning);
+        }
+    }
+
+
+    /**
+     * Reads the dictionary from a JSON file, which may be gzipped.
      *
      * @param filePath the path to the JSON file
      * @return a HashMap representing the dictionary
      * @throws IOException if there is an error reading the file
      */
-    private HashMap<String, String> readJSONDictionary(String filePath) throws IOException {
-        return new ObjectMapper().readValue(new File(filePath), HashMap.class);
+    static HashMap<String, String> readJSONDictionary(String filePath) throws IOException {
+        return parseJSONDictionary(Files.readAllBytes(Path.of(filePath)));
+    }
+
+
+    /**
+     * Parses the content of a dictionary file, which may be gzipped.
+     *
+     * @param content the bytes of the file
+     * @return the words and meanings
+     * @throws IOException if the content is not a JSON object of words and meanings
+     */
+    static HashMap<String, String> parseJSONDictionary(byte[] content) throws IOException {
+        // A JSON object cannot start with the gzip magic number
+        boolean gzipped = content.length > 1 && content[0] == (byte) 0x1f && content[1] == (byte) 0x8b;
+        try (InputStream in = gzipped ? new GZIPInputStream(new ByteArrayInputStream(content))
+                                      : new ByteArrayInputStream(content)) {
+            return objectMapper.readValue(in, ENTRIES);
+        }
+    }
+
+
+    /**
+     * Waits until a version of the dictionary is in the file. If no file write covers it yet, the caller
+     * becomes the leader and writes the newest version, which also covers the changes of every writer
+     * waiting behind it. The file is written without holding any lock, so new changes keep being applied
+     * and queue up for the next write. Must be called without holding the dictionary's lock.
+     *
+     * @param written the version the caller's change produced
+     * @return null if successful, otherwise a HashMap with an error code and message
+     */
+    private HashMap<String, String> persist(long written) {
+        long started = System.nanoTime();
+        try {
+            return persistVersion(written);
+        } finally {
+            RequestTrace.record(RequestTrace.Phase.PERSIST, started);
+        }
+    }
+
+
+    private HashMap<String, String> persistVersion(long written) {
+        boolean interrupted = false;
+        synchronized (flushLock) {
+            while (flushing && persistedVersion < written) {
+                try {
+                    flushLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true; // The caller is only acknowledged once its change is written
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            // A file write that ran while this caller waited may already include its change
+            if (persistedVersion >= written) {
+                return flushError;
+            }
+            flushing = true;
+        }
+
+        Map<String, String> latest;
+        long latestVersion;
+        synchronized (this) {
+            latest = snapshot();
+            latestVersion = version;
+        }
+        HashMap<String, String> error = null;
+        try {
+            error = writeJSONDictionary(latest);
+            return error;
+        } finally {
+            synchronized (flushLock) {
+                flushes.increment();
+                coalesced.add(latestVersion - persistedVersion - 1);
+                flushError = error;
+                persistedVersion = latestVersion;
+                flushing = false;
+                flushLock.notifyAll();
+            }
+        }
     }
 
 
     /**
-     * Writes the current state of the dictionary to a JSON file.
+     * Writes the current state of the dictionary to a JSON file. The write bypasses the group commit of
+     * {@link #persist}, so it may only be called before the dictionary is served, e.g. while a
+     * {@link ShardedDictionary} lays out its shard files.
      *
      * @return null if successful, otherwise a HashMap with an error code and message
      */
-    private HashMap<String, String> writeJSONDictionary() {
+    HashMap<String, String> writeJSONDictionary() {
+        return writeJSONDictionary(snapshot());
+    }
+
+
+    /**
+     * Writes the content to a temporary file next to the dictionary file and moves it over the old file.
+     */
+    private HashMap<String, String> writeJSONDictionary(Map<String, String> content) {
         try {
-            new ObjectMapper().writeValue(new File(this.filePath), dictionary);
+            byte[] json;
+            if (codec == null) {
+                json = objectMapper.writeValueAsBytes(content);
+            } else {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (GZIPOutputStream gzip = new GZIPOutputStream(bytes, 64 * 1024)) {
+                    objectMapper.writeValue(gzip, content);
+                }
+                json = bytes.toByteArray();
+            }
+            Path target = Path.of(this.filePath);
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            Files.write(temp, json);
+            rememberWrite(json);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
             return null;
         } catch (IOException e) {
             HashMap<String, String> response = new HashMap<>();
@@ -219,6 +631,62 @@ public class Dictionary {
     }
 
 
+    /**
+     * Tells whether the content of the dictionary file was written by this dictionary. Several recent
+     * writes are remembered, because the file may be read just before a newer write replaces it.
+     *
+     * @param content the bytes read from the file
+     * @return true if one of the recent writes produced exactly these bytes
+     */
+    public boolean isOwnWrite(byte[] content) {
+        long digest = digest(content);
+        synchronized (recentWrites) {
+            for (long write : recentWrites) {
+                if (write == digest) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+
+    private void rememberWrite(byte[] content) {
+        long digest = digest(content);
+        synchronized (recentWrites) {
+            recentWrites[recentWriteIndex] = digest;
+            recentWriteIndex = (recentWriteIndex + 1) % RECENT_WRITES;
+        }
+    }
+
+
+    /**
+     * @return the CRC32C checksum of the content in the upper half and its length in the lower half
+     */
+    private static long digest(byte[] content) {
+        CRC32C crc = new CRC32C();
+        crc.update(content);
+        return crc.getValue() << 32 | (content.length & 0xFFFFFFFFL);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * Waits for a file write in progress, then writes the latest version unless a write already covers it.
+     */
+    @Override
+    public void close() {
+        long current;
+        synchronized (this) {
+            current = version;
+        }
+        HashMap<String, String> error = persist(current);
+        if (error != null) {
+            ServerLog.info("Could not write " + filePath + " on shutdown: " + error.get("msg"));
+        }
+    }
+
+
     @Override
     public String toString() {
         return "Dictionary{" +
@@ -0,0 +1,158 @@
+package com.zzh.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+
+/**
+ * The DictionaryReloader class watches the dictionary file and loads it again when another program
+ * replaces or changes it, so a regenerated dictionary is picked up without restarting the server.
+ * The file is parsed in a background thread and handed to {@link DicStore#replaceAll}, which applies
+ * only the words that differ and publishes them as one new version. Readers keep working on the old
+ * version until then and never wait for a reload.
+ *
+ * <p>
+ * The server rewrites the same file after every change. Files the server wrote itself are recognised and
+ * skipped, otherwise reloading one that was already outdated would undo the newer changes.
+ * </p>
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class DictionaryReloader {
+    private final Path file;
+    private final DicStore dictionary;
+    private final Predicate<byte[]> ownWrite;
+    private final long quietMillis;
+    private final LongAdder reloads = ServerMetrics.counter("reload.count");
+    private final LongAdder failures = ServerMetrics.counter("reload.failures");
+    private volatile long lastDurationMillis;
+    private volatile long lastChanged;
+
+
+    /**
+     * Constructs a DictionaryReloader.
+     *
+     * @param filePath    the path to the dictionary file
+     * @param dictionary  the dictionary the file is loaded into
+     * @param ownWrite    tells whether the content read from the file was written by the dictionary itself
+     * @param quietMillis the time the file must stay unchanged before it is loaded
+     */
+    public DictionaryReloader(String filePath, DicStore dictionary, Predicate<byte[]> ownWrite, long quietMillis) {
+        this.file = Path.of(filePath).toAbsolutePath();
+        this.dictionary = dictionary;
+        this.ownWrite = ownWrite;
+        this.quietMillis = quietMillis;
+        ServerMetrics.gauge("reload.lastDurationMs", () -> lastDurationMillis);
+        ServerMetrics.gauge("reload.lastChanged", () -> lastChanged);
+    }
+
+
+    /**
+     * Starts watching the file in a background thread.
+     */
+    public void start() {
+        Thread watcher = new Thread(this::watch, "dictionary-reloader");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+
+    /**
+     * Waits for changes to the file's directory and reloads the file once it has been quiet for a while.
+     * The directory is watched rather than the file, because a file replaced by a rename is a new file.
+     */
+    private void watch() {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            file.getParent().register(watchService,
+                                      StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            ServerLog.info("Watching " + file + " for changes");
+            while (true) {
+                if (!touchesFile(watchService.take())) {
+                    continue;
+                }
+                WatchKey next;
+                while ((next = watchService.poll(quietMillis, TimeUnit.MILLISECONDS)) != null) {
+                    touchesFile(next);
+                }
+                reload();
+            }
+        } catch (IOException | ClosedWatchServiceException e) {
+            ServerLog.error("Error In Watching Dictionary File, Changes Will Not Be Reloaded", "Error");
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Consumes the events of a watch key and re-arms it.
+     *
+     * @param key the signalled key
+     * @return true if one of the events concerns the dictionary file, or events were lost
+     * @throws ClosedWatchServiceException if the directory can no longer be watched
+     */
+    private boolean touchesFile(WatchKey key) {
+        boolean touched = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                touched = true;
+            }
+        }
+        if (!key.reset()) {
+            throw new ClosedWatchServiceException();
+        }
+        return touched;
+    }
+
+
+    /**
+     * Loads the file into the dictionary, unless the dictionary wrote it. A file that cannot be read or
+     * parsed is left alone; the next change to it is tried again.
+     */
+    private void reload() {
+        long start = System.nanoTime();
+        try {
+            byte[] content = Files.readAllBytes(file);
+            if (ownWrite.test(content)) {
+                return;
+            }
+            HashMap<String, String> entries = Dictionary.parseJSONDictionary(content);
+            if (entries.containsValue(null)) {
+                throw new IOException("Word meanings cannot be null");
+            }
+            int changed = dictionary.replaceAll(entries);
+            lastDurationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            lastChanged = changed;
+            reloads.increment();
+            ServerLog.info("Reloaded " + file.getFileName() + ": " + changed + " word(s) changed in "
+                                   + lastDurationMillis + "ms");
+        } catch (IOException | UncheckedIOException e) {
+            failures.increment();
+            ServerLog.info("Could not reload " + file.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "DictionaryReloader{" +
+                "file=" + file +
+                ", lastChanged=" + lastChanged +
+                '}';
+    }
+}
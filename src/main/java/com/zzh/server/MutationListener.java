@@ -0,0 +1,24 @@
+package com.zzh.server;
+
+
+/**
+ * The MutationListener interface is notified of every change applied to a dictionary.
+ * Listeners are called while the changed shard is still locked, so for any one word they see
+ * the changes in the order they were applied. Implementations must therefore return quickly.
+ * A word that did not exist before is always reported as CREATE, and a word that was removed as DELETE.
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public interface MutationListener {
+
+    /**
+     * Called after a word has been changed.
+     *
+     * @param action  the operation that caused the change (CREATE, UPDATE, DELETE, APPEND, ...)
+     * @param key     the word that changed
+     * @param meaning the meaning of the word after the change, or null if the word was removed
+     */
+    void onMutation(String action, String key, String meaning);
+}
@@ -0,0 +1,142 @@
+package com.zzh.server;
+
+import com.zzh.common.ConsistentHashRing;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The OwnedKeysDictionary class restricts a {@link DicStore} to the words this server owns in a
+ * multi-node deployment. Ownership is decided by the same consistent-hash ring the clients use,
+ * so a correctly routed request is always served, and a misrouted one is rejected with the owner's
+ * address instead of silently creating the word on the wrong node.
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class OwnedKeysDictionary implements DicStore {
+    private final DicStore dictionary;
+    private final ConsistentHashRing<String> ring;
+    private final String self;
+
+
+    /**
+     * Constructs an OwnedKeysDictionary serving only the words mapped to {@code self} on the ring.
+     *
+     * @param dictionary the dictionary holding this server's words
+     * @param ring       the cluster ring shared with the clients
+     * @param self       this server's node name on the ring
+     * @throws IllegalArgumentException if {@code self} is not a node of the ring
+     */
+    public OwnedKeysDictionary(DicStore dictionary, ConsistentHashRing<String> ring, String self) {
+        if (!ring.getNodes().contains(self)) {
+            throw new IllegalArgumentException("This server (" + self + ") is not part of the cluster " + ring.getNodes());
+        }
+        this.dictionary = dictionary;
+        this.ring = ring;
+        this.self = self;
+    }
+
+
+    @Override
+    public HashMap<String, String> createWord(String key, String meaning) {
+        HashMap<String, String> notOwned = checkOwner(key);
+        return notOwned != null ? notOwned : dictionary.createWord(key, meaning);
+    }
+
+
+    @Override
+    public HashMap<String, String> readWord(String key) {
+        HashMap<String, String> notOwned = checkOwner(key);
+        return notOwned != null ? notOwned : dictionary.readWord(key);
+    }
+
+
+    @Override
+    public HashMap<String, String> updateWord(String key, String curMeaning, String updatedMeaning) {
+        HashMap<String, String> notOwned = checkOwner(key);
+        return notOwned != null ? notOwned : dictionary.updateWord(key, curMeaning, updatedMeaning);
+    }
+
+
+    @Override
+    public HashMap<String, String> deleteWord(String key) {
+        HashMap<String, String> notOwned = checkOwner(key);
+        return notOwned != null ? notOwned : dictionary.deleteWord(key);
+    }
+
+
+    @Override
+    public HashMap<String, String> appendWord(String key, String newMeaning) {
+        HashMap<String, String> notOwned = checkOwner(key);
+        return notOwned != null ? notOwned : dictionary.appendWord(key, newMeaning);
+    }
+
+
+    @Override
+    public void addMutationListener(MutationListener listener) {
+        dictionary.addMutationListener(listener);
+    }
+
+
+    @Override
+    public void applyMutation(String action, String key, String meaning) {
+        dictionary.applyMutation(action, key, meaning);
+    }
+
+
+    @Override
+    public int replaceAll(Map<String, String> entries) {
+        return dictionary.replaceAll(entries);
+    }
+
+
+    @Override
+    public Map<String, String> snapshot() {
+        return dictionary.snapshot();
+    }
+
+
+    @Override
+    public List<String> scanKeys(String from, boolean inclusive, int limit) {
+        return dictionary.scanKeys(from, inclusive, limit);
+    }
+
+
+    /**
+     * Checks whether this server owns a word.
+     *
+     * @param key the word
+     * @return null if the word is owned, otherwise an error response naming the owner
+     */
+    private HashMap<String, String> checkOwner(String key) {
+        String owner = ring.nodeFor(key);
+        if (owner.equals(self)) {
+            return null;
+        }
+        HashMap<String, String> response = new HashMap<>();
+        response.put("code", "ERROR");
+        response.put("msg", "(" + key + ") is stored on server " + owner + ", not on this server.");
+        response.put("owner", owner);
+        return response;
+    }
+
+
+    @Override
+    public void close() {
+        dictionary.close();
+    }
+
+
+    @Override
+    public String toString() {
+        return "OwnedKeysDictionary{" +
+                "dictionary=" + dictionary +
+                ", self='" + self + '\'' +
+                ", ring=" + ring +
+                '}';
+    }
+}
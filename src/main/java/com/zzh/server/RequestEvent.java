@@ -0,0 +1,77 @@
+package com.zzh.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+
+/**
+ * The RequestEvent class is the Java Flight Recorder event of an answered request, carrying the time of
+ * each phase traced by {@link RequestTrace}. Events are only filled in and committed while a recording
+ * enables {@code com.zzh.server.Request}, e.g. with {@code -XX:StartFlightRecording}, and cost next to nothing
+ * otherwise.
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+@Name("com.zzh.server.Request")
+@Label("Dictionary Request")
+@Category("Dictionary Server")
+@Description("A request answered by the dictionary server, with the time spent in each phase")
+@StackTrace(false)
+class RequestEvent extends jdk.jfr.Event {
+    @Label("Connection")
+    int connection;
+
+    @Label("Action")
+    String action;
+
+    @Label("Word")
+    String word;
+
+    @Label("Total")
+    @Timespan(Timespan.NANOSECONDS)
+    long total;
+
+    @Label("Queue")
+    @Timespan(Timespan.NANOSECONDS)
+    long queue;
+
+    @Label("Parse")
+    @Timespan(Timespan.NANOSECONDS)
+    long parse;
+
+    @Label("Lane")
+    @Timespan(Timespan.NANOSECONDS)
+    long lane;
+
+    @Label("Lock Wait")
+    @Timespan(Timespan.NANOSECONDS)
+    long lockWait;
+
+    @Label("Execute")
+    @Timespan(Timespan.NANOSECONDS)
+    long execute;
+
+    @Label("Persist")
+    @Timespan(Timespan.NANOSECONDS)
+    long persist;
+
+    @Label("Write")
+    @Timespan(Timespan.NANOSECONDS)
+    long write;
+
+
+    @Override
+    public String toString() {
+        return "RequestEvent{" +
+                "connection=" + connection +
+                ", action='" + action + '\'' +
+                ", total=" + total +
+                '}';
+    }
+}
@@ -0,0 +1,260 @@
+package com.zzh.server;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The RequestHandler class turns a parsed client request into the response bytes sent back to the client.
+ * It dispatches the request to the {@link DicStore} and serialises the response as one line of JSON straight
+ * into the connection's output stream.
+ * READ responses are kept in an optional {@link ResponseCache}, so repeated lookups of popular words
+ * are answered with the stored bytes without touching the dictionary or doing any JSON work.
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class RequestHandler {
+    // Shared with SocketRunner; the output stream belongs to the connection, so Jackson must not close it
+    static final ObjectMapper objectMapper = new ObjectMapper().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    // The code of a request refused because of load; it was not applied and can be sent again later
+    static final String BUSY = "BUSY";
+    private final DicStore dictionary;
+    private final ResponseCache responseCache;
+    private final ChangeFeed changeFeed;
+
+
+    /**
+     * Constructs a RequestHandler.
+     *
+     * @param dictionary    the dictionary serving the requests
+     * @param responseCache the cache of READ responses, or null to disable caching; it must be
+     *                      registered as a listener of the dictionary
+     * @param changeFeed    the feed serving SUBSCRIBE requests, or null to refuse them
+     */
+    public RequestHandler(DicStore dictionary, ResponseCache responseCache, ChangeFeed changeFeed) {
+        this.dictionary = dictionary;
+        this.responseCache = responseCache;
+        this.changeFeed = changeFeed;
+    }
+
+
+    /**
+     * @return the feed serving SUBSCRIBE requests, or null if subscriptions are disabled
+     */
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+
+    /**
+     * Processes a request and writes the serialised response, terminated by a newline.
+     *
+     * @param requestMap the request data sent by the client
+     * @param out        the stream receiving the UTF-8 encoded JSON response line
+     * @throws IOException if the response cannot be serialised or written
+     */
+    public void respond(Map<String, String> requestMap, OutputStream out) throws IOException {
+        String word = requestMap.get("word");
+        if (responseCache == null || !"READ".equals(requestMap.get("action")) || word == null || word.isEmpty()) {
+            objectMapper.writeValue(out, handleRequest(requestMap));
+            out.write('\n');
+            return;
+        }
+
+        byte[] cached = responseCache.get(word);
+        if (cached == null) {
+            ResponseCache.Entry reservation = responseCache.reserve(word);
+            HashMap<String, String> responseMap;
+            try {
+                responseMap = handleRequest(requestMap);
+                cached = serialize(responseMap);
+            } catch (IOException | RuntimeException e) {
+                responseCache.release(word, reservation);
+                throw e;
+            }
+            responseCache.put(word, reservation, cached, "SUCCESS".equals(responseMap.get("code")));
+        }
+        out.write(cached);
+    }
+
+
+    /**
+     * Tells whether an action changes the dictionary, so it can be scheduled apart from reads.
+     *
+     * @param action the request's action
+     * @return true for CREATE, UPDATE, DELETE and APPEND
+     */
+    public static boolean isMutation(String action) {
+        return "CREATE".equals(action) || "UPDATE".equals(action) || "DELETE".equals(action) || "APPEND".equals(action);
+    }
+
+
+    /**
+     * Writes an error response for a request that is not processed, e.g. because its deadline expired.
+     *
+     * @param message the error message
+     * @param out     the stream receiving the response line
+     * @throws IOException if the response cannot be written
+     */
+    public void reject(String message, OutputStream out) throws IOException {
+        reject("ERROR", message, out);
+    }
+
+
+    /**
+     * Writes a response with the given code for a request that is not processed, e.g. {@link #BUSY} for a
+     * request refused because the server or the client is over its limits.
+     *
+     * @param code    the response code
+     * @param message the error message
+     * @param out     the stream receiving the response line
+     * @throws IOException if the response cannot be written
+     */
+    public void reject(String code, String message, OutputStream out) throws IOException {
+        HashMap<String, String> responseMap = new HashMap<>();
+        responseMap.put("code", code);
+        responseMap.put("msg", message);
+        objectMapper.writeValue(out, responseMap);
+        out.write('\n');
+    }
+
+
+    private static byte[] serialize(HashMap<String, String> responseMap) throws JsonProcessingException {
+        return (objectMapper.writeValueAsString(responseMap) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Processes the client's request by determining the action (e.g., CREATE, READ, UPDATE, DELETE, APPEND,
+     * LIST/SCAN for sorted pages of words, or STATS for the server metrics) and interacting with the Dictionary accordingly. Returns the response as a HashMap.
+     *
+     * @param requestMap the request data sent by the client
+     * @return a HashMap containing the response data
+     */
+    HashMap<String, String> handleRequest(Map<String, String> requestMap) {
+        String action = requestMap.get("action");
+        String key = requestMap.get("word");
+        String meaning = requestMap.get("meaning");
+        String specialMeaning = requestMap.get("specialMeaning");
+
+        HashMap<String, String> responseMap = new HashMap<>();
+        responseMap.put("code", "ERROR");
+        responseMap.put("msg", "There is something wrong, please try again");
+
+        // Metrics are not about a word
+        if ("STATS".equals(action)) {
+            try {
+                responseMap.put("msg", objectMapper.writeValueAsString(ServerMetrics.snapshot()));
+                responseMap.put("code", "SUCCESS");
+            } catch (JsonProcessingException e) {
+                e.printStackTrace();
+            }
+            return responseMap;
+        }
+
+        // Listing starts from an optional word, so it is validated separately
+        if ("LIST".equals(action) || "SCAN".equals(action)) {
+            return handleScan(requestMap, "SCAN".equals(action));
+        }
+
+        //Server side validation for request action and word key
+        if (action == null || key == null || action.isEmpty() || key.isEmpty()) {
+            responseMap.put("msg", "Word can not be empty, please try again");
+            return responseMap;
+        }
+
+
+        responseMap = switch (action) {
+            case "CREATE" -> this.dictionary.createWord(key, meaning);
+            case "READ" -> this.dictionary.readWord(key);
+            case "UPDATE" -> this.dictionary.updateWord(key, meaning, specialMeaning);
+            case "DELETE" -> this.dictionary.deleteWord(key);
+            case "APPEND" -> this.dictionary.appendWord(key, meaning);
+            default -> responseMap;
+        };
+
+        return responseMap;
+    }
+
+    /**
+     * Returns one page of words in sorted order. The request may contain a "start" word, a "cursor"
+     * (the "cursor" of the previous page's response, which takes precedence over "start") and a "limit".
+     * LIST returns a JSON array of words, SCAN a JSON object of words and meanings, both in "msg".
+     * The response "cursor" is empty once the last page has been returned.
+     *
+     * @param requestMap    the request data sent by the client
+     * @param withMeanings  true to include the meanings (SCAN), false for words only (LIST)
+     * @return a HashMap containing the response data
+     */
+    private HashMap<String, String> handleScan(Map<String, String> requestMap, boolean withMeanings) {
+        HashMap<String, String> responseMap = new HashMap<>();
+        responseMap.put("code", "ERROR");
+
+        String cursor = requestMap.get("cursor");
+        String start = requestMap.get("start");
+        int limit = ServerConfig.scanMaxPage();
+        try {
+            if (requestMap.get("limit") != null) {
+                limit = Math.min(limit, Integer.parseInt(requestMap.get("limit")));
+            }
+        } catch (NumberFormatException e) {
+            responseMap.put("msg", "Page limit must be a number");
+            return responseMap;
+        }
+        if (limit < 1) {
+            responseMap.put("msg", "Page limit must be positive");
+            return responseMap;
+        }
+
+        // Read one word more than the page to know whether another page follows
+        boolean fromCursor = cursor != null && !cursor.isEmpty();
+        String from = fromCursor ? cursor : start;
+        List<String> keys = this.dictionary.scanKeys(from, !fromCursor, limit + 1);
+        boolean more = keys.size() > limit;
+        if (more) {
+            keys = keys.subList(0, limit);
+        }
+
+        try {
+            if (withMeanings) {
+                Map<String, String> snapshot = this.dictionary.snapshot();
+                LinkedHashMap<String, String> page = new LinkedHashMap<>();
+                for (String key : keys) {
+                    String meaning = snapshot.get(key);
+                    if (meaning != null) {
+                        page.put(key, meaning);
+                    }
+                }
+                responseMap.put("msg", objectMapper.writeValueAsString(page));
+            } else {
+                responseMap.put("msg", objectMapper.writeValueAsString(keys));
+            }
+        } catch (JsonProcessingException e) {
+            e.printStackTrace();
+            return responseMap;
+        }
+        responseMap.put("cursor", more ? keys.get(keys.size() - 1) : "");
+        responseMap.put("code", "SUCCESS");
+        return responseMap;
+    }
+
+
+    @Override
+    public String toString() {
+        return "RequestHandler{" +
+                "dictionary=" + dictionary +
+                ", responseCache=" + responseCache +
+                '}';
+    }
+}
@@ -0,0 +1,176 @@
+package com.zzh.server;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The RequestTrace class times the phases of a request, so the cause of a slow request can be told apart:
+ * waiting for a worker, parsing, waiting in a lane, waiting for the dictionary lock, executing, writing
+ * the dictionary file, or sending the response. Each connection reuses one trace, and a phase costs two
+ * {@link System#nanoTime()} calls, so every request is traced.
+ *
+ * <p>
+ * Phases inside the dictionary are recorded through the trace attached to the current thread while the
+ * request executes, which is why the execute phase includes the lock wait and persist phases. The time of
+ * every phase is added to a {@code trace.<phase>Nanos} counter. A request that took longer than
+ * {@link ServerConfig#slowRequestMillis()} is logged with its phases, and a {@link RequestEvent} is
+ * recorded for each request while a Java Flight Recorder recording enables it.
+ * </p>
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public final class RequestTrace {
+    private static final Phase[] PHASES = Phase.values();
+    private static final ThreadLocal<RequestTrace> current = new ThreadLocal<>();
+    private static final long slowNanos = ServerConfig.slowRequestMillis() * 1_000_000L;
+    private static final LongAdder requests = ServerMetrics.counter("trace.requests");
+    private static final LongAdder slowRequests = ServerMetrics.counter("trace.slowRequests");
+    private static final LongAdder[] phaseNanos = new LongAdder[PHASES.length];
+    private final long[] nanos = new long[PHASES.length];
+
+    static {
+        for (Phase phase : PHASES) {
+            phaseNanos[phase.ordinal()] = ServerMetrics.counter("trace." + phase.metricName + "Nanos");
+        }
+    }
+
+
+    /**
+     * The phases of a request, in the order they happen.
+     */
+    public enum Phase {
+        /**
+         * A new connection waiting in the INTAKE lane for a worker, timed from the accept.
+         */
+        QUEUE("queue"),
+        /**
+         * Parsing the request, from its first to its last token.
+         */
+        PARSE("parse"),
+        /**
+         * The parsed request waiting in the READ or MUTATE lane.
+         */
+        LANE("lane"),
+        /**
+         * Waiting for the dictionary's lock to change it; part of {@link #EXECUTE}.
+         */
+        LOCK_WAIT("lockWait"),
+        /**
+         * Processing the request and serialising the response.
+         */
+        EXECUTE("execute"),
+        /**
+         * Waiting until the change is in the dictionary file; part of {@link #EXECUTE}.
+         */
+        PERSIST("persist"),
+        /**
+         * Sending the response.
+         */
+        WRITE("write");
+
+        private final String metricName;
+
+        Phase(String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+
+    /**
+     * Adds the time since a phase started to this trace.
+     *
+     * @param phase     the phase
+     * @param startedAt the {@link System#nanoTime()} at which the phase started
+     */
+    public void add(Phase phase, long startedAt) {
+        nanos[phase.ordinal()] += System.nanoTime() - startedAt;
+    }
+
+
+    /**
+     * Adds the time since a phase started to the trace attached to the current thread, if any.
+     *
+     * @param phase     the phase
+     * @param startedAt the {@link System#nanoTime()} at which the phase started
+     */
+    public static void record(Phase phase, long startedAt) {
+        RequestTrace trace = current.get();
+        if (trace != null) {
+            trace.add(phase, startedAt);
+        }
+    }
+
+
+    /**
+     * Makes this trace receive the phases recorded by the current thread, until {@link #detach()}.
+     */
+    public void attach() {
+        current.set(this);
+    }
+
+
+    /**
+     * Stops recording the current thread's phases in this trace.
+     */
+    public void detach() {
+        current.set(null);
+    }
+
+
+    /**
+     * Completes the trace of a request: adds its phases to the metrics, logs it if it was slow, records it
+     * for the flight recorder, and clears the trace for the next request.
+     *
+     * @param request    the request
+     * @param receivedAt the {@link System#nanoTime()} at which the request's time started
+     * @param connection the number of the connection the request came on
+     */
+    public void finish(Map<String, String> request, long receivedAt, int connection) {
+        long total = System.nanoTime() - receivedAt;
+        requests.increment();
+        for (Phase phase : PHASES) {
+            phaseNanos[phase.ordinal()].add(nanos[phase.ordinal()]);
+        }
+        if (slowNanos > 0 && total >= slowNanos) {
+            slowRequests.increment();
+            ServerLog.info("Slow request " + total / 1_000_000 + " ms on connection " + connection + ": action="
+                           + request.get("action") + " word=" + request.get("word") + " " + this);
+        }
+
+        RequestEvent event = new RequestEvent();
+        if (event.shouldCommit()) {
+            event.connection = connection;
+            event.action = request.get("action");
+            event.word = request.get("word");
+            event.total = total;
+            event.queue = nanos[Phase.QUEUE.ordinal()];
+            event.parse = nanos[Phase.PARSE.ordinal()];
+            event.lane = nanos[Phase.LANE.ordinal()];
+            event.lockWait = nanos[Phase.LOCK_WAIT.ordinal()];
+            event.execute = nanos[Phase.EXECUTE.ordinal()];
+            event.persist = nanos[Phase.PERSIST.ordinal()];
+            event.write = nanos[Phase.WRITE.ordinal()];
+            event.commit();
+        }
+        Arrays.fill(nanos, 0);
+    }
+
+
+    @Override
+    public String toString() {
+        StringBuilder phases = new StringBuilder("RequestTrace{");
+        for (Phase phase : PHASES) {
+            if (phase != Phase.QUEUE) {
+                phases.append(", ");
+            }
+            phases.append(phase.metricName).append('=')
+                  .append(String.format(Locale.ROOT, "%.3f", nanos[phase.ordinal()] / 1_000_000.0)).append("ms");
+        }
+        return phases.append('}').toString();
+    }
+}
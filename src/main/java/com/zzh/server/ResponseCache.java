@@ -0,0 +1,178 @@
+package com.zzh.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The ResponseCache class keeps the serialised READ response of recently read words, so a lookup of a
+ * popular word is a map probe followed by a buffer write. It listens to the dictionary and drops a word's
+ * response as soon as the word is created, changed or deleted.
+ *
+ * <p>
+ * A response computed while the word is being changed must not be cached. Readers {@link #reserve} the
+ * word with a placeholder before reading the dictionary, and {@link #put} only replaces that placeholder.
+ * Invalidation removes whatever the word maps to, so a change of the word during the read makes the insert
+ * fail, while changes of other words do not affect it.
+ * </p>
+ *
+ * <p>
+ * Evictions follow the CLOCK policy: each cached response takes a slot in a ring and is marked whenever it
+ * is read; the ring's hand clears the mark of responses read since it last passed and evicts the first
+ * unmarked one. Responses for words that do not exist have their own ring, a tenth of the capacity, so
+ * lookups of missing words only evict each other and never push out responses of existing words.
+ * </p>
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class ResponseCache implements MutationListener {
+    private final Map<String, Entry> responses = new ConcurrentHashMap<>();
+    private final int capacity;
+    private final Ring found;
+    private final Ring missing;
+    private final LongAdder hits = ServerMetrics.counter("responseCache.hits");
+    private final LongAdder misses = ServerMetrics.counter("responseCache.misses");
+    private final LongAdder evictions = ServerMetrics.counter("responseCache.evictions");
+
+
+    /**
+     * A cached response, or a placeholder reserving the word while its response is computed.
+     */
+    static final class Entry {
+        private final String key;
+        private final byte[] response;
+        private volatile boolean referenced;
+
+        private Entry(String key, byte[] response) {
+            this.key = key;
+            this.response = response;
+        }
+    }
+
+
+    /**
+     * Constructs a ResponseCache holding at most {@code capacity} responses.
+     *
+     * @param capacity the maximum number of cached words
+     */
+    public ResponseCache(int capacity) {
+        this.capacity = capacity;
+        this.found = new Ring(capacity);
+        this.missing = new Ring(Math.max(1, capacity / 10));
+        ServerMetrics.gauge("responseCache.size", responses::size);
+    }
+
+
+    /**
+     * Looks up the cached response of a word.
+     *
+     * @param key the word
+     * @return the response bytes, or null if the word is not cached
+     */
+    public byte[] get(String key) {
+        Entry entry = responses.get(key);
+        if (entry == null || entry.response == null) {
+            misses.increment();
+            return null;
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        hits.increment();
+        return entry.response;
+    }
+
+
+    /**
+     * Reserves a word whose response is about to be computed. Must be called before the dictionary is read.
+     *
+     * @param key the word
+     * @return the reservation to pass to {@link #put}
+     */
+    public Entry reserve(String key) {
+        Entry placeholder = new Entry(key, null);
+        Entry current = responses.putIfAbsent(key, placeholder);
+        return current != null ? current : placeholder;
+    }
+
+
+    /**
+     * Caches a response unless the word changed since it was reserved. When the response's ring is full,
+     * the ring's hand evicts the first response that was not read since the hand last passed it.
+     *
+     * @param key         the word
+     * @param reservation the value of {@link #reserve} taken before the dictionary was read
+     * @param response    the serialised response
+     * @param exists      false if the response says the word does not exist
+     */
+    public void put(String key, Entry reservation, byte[] response, boolean exists) {
+        Entry entry = new Entry(key, response);
+        if (responses.replace(key, reservation, entry)) {
+            (exists ? found : missing).add(entry);
+        }
+    }
+
+
+    /**
+     * Drops a reservation whose response could not be computed, so the word can be reserved again.
+     *
+     * @param key         the word
+     * @param reservation the value of {@link #reserve}
+     */
+    public void release(String key, Entry reservation) {
+        if (reservation.response == null) {
+            responses.remove(key, reservation);
+        }
+    }
+
+
+    @Override
+    public void onMutation(String action, String key, String meaning) {
+        responses.remove(key);
+    }
+
+
+    /**
+     * The CLOCK ring of one kind of response. A slot whose response was invalidated or replaced is reused
+     * when the hand reaches it.
+     */
+    private final class Ring {
+        private final Entry[] slots;
+        private int hand;
+
+        private Ring(int capacity) {
+            this.slots = new Entry[capacity];
+        }
+
+        private synchronized void add(Entry entry) {
+            while (true) {
+                Entry victim = slots[hand];
+                if (victim == null || responses.get(victim.key) != victim) {
+                    break;
+                }
+                if (!victim.referenced) {
+                    if (responses.remove(victim.key, victim)) {
+                        evictions.increment();
+                    }
+                    break;
+                }
+                victim.referenced = false;
+                hand = (hand + 1) % slots.length;
+            }
+            slots[hand] = entry;
+            hand = (hand + 1) % slots.length;
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "ResponseCache{" +
+                "capacity=" + capacity +
+                ", size=" + responses.size() +
+                '}';
+    }
+}
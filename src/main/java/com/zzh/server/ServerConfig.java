@@ -0,0 +1,441 @@
+package com.zzh.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * The ServerConfig class collects the optional tuning settings of the server.
+ * Settings are read from JVM system properties (e.g. {@code java -Ddic.shards=8 -jar ...}) so the
+ * command-line usage of the server stays {@code <port> <dictionary-file>}.
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public final class ServerConfig {
+
+    private ServerConfig() {
+    }
+
+
+    /**
+     * Number of shards the dictionary is partitioned into. A value of 1 keeps the
+     * single-file {@link Dictionary}.
+     *
+     * @return the shard count (property {@code dic.shards}, default 1)
+     */
+    public static int shards() {
+        return Math.max(1, Integer.getInteger("dic.shards", 1));
+    }
+
+
+    /**
+     * Runs the server without the Swing window, e.g. to start several servers from a shell.
+     *
+     * @return true if property {@code dic.headless} is true
+     */
+    public static boolean headless() {
+        return Boolean.getBoolean("dic.headless");
+    }
+
+
+    /**
+     * Number of worker threads used when running headless.
+     *
+     * @return the worker count (property {@code dic.workers}, default 2)
+     */
+    public static int workers() {
+        return Math.max(1, Integer.getInteger("dic.workers", 2));
+    }
+
+
+    /**
+     * Maximum number of queued client connections used when running headless.
+     *
+     * @return the queue size (property {@code dic.queue}, default 1)
+     */
+    public static int queueSize() {
+        return Math.max(1, Integer.getInteger("dic.queue", 1));
+    }
+
+
+    /**
+     * The servers of the cluster as {@code host:port} entries. The same list, in any order,
+     * must be given to every server and client of the cluster.
+     *
+     * @return the cluster nodes (property {@code dic.cluster.nodes}, comma separated), empty when not clustered
+     */
+    public static List<String> clusterNodes() {
+        return splitList(System.getProperty("dic.cluster.nodes", ""));
+    }
+
+
+    /**
+     * The {@code host:port} entry of {@link #clusterNodes()} identifying this server.
+     *
+     * @return this server's node name (property {@code dic.cluster.self}), or null when not set
+     */
+    public static String clusterSelf() {
+        return System.getProperty("dic.cluster.self");
+    }
+
+
+    /**
+     * Number of positions each server takes on the consistent-hash ring. Must match the clients.
+     *
+     * @return the virtual node count (property {@code dic.cluster.vnodes}, default 160)
+     */
+    public static int virtualNodes() {
+        return Math.max(1, Integer.getInteger("dic.cluster.vnodes", 160));
+    }
+
+
+    /**
+     * Port on which a primary server streams its changes to replicas.
+     *
+     * @return the replication port (property {@code dic.replication.port}), 0 when this server has no replicas
+     */
+    public static int replicationPort() {
+        return Integer.getInteger("dic.replication.port", 0);
+    }
+
+
+    /**
+     * The replication address of the primary this server replicates. Setting it makes this server a
+     * read-only replica.
+     *
+     * @return the primary's {@code host:port} (property {@code dic.replication.primary}), or null
+     */
+    public static String replicationPrimary() {
+        return System.getProperty("dic.replication.primary");
+    }
+
+
+    /**
+     * Number of recent changes a primary keeps for replicas that are catching up. A replica falling
+     * further behind is re-synchronised from a snapshot.
+     *
+     * @return the log capacity (property {@code dic.replication.logSize}, default 65536)
+     */
+    public static int replicationLogSize() {
+        return Math.max(16, Integer.getInteger("dic.replication.logSize", 65536));
+    }
+
+
+    /**
+     * Largest page a LIST or SCAN request may ask for, which bounds the memory used per request.
+     *
+     * @return the maximum page size (property {@code dic.scan.maxPage}, default 1000)
+     */
+    public static int scanMaxPage() {
+        return Math.max(1, Integer.getInteger("dic.scan.maxPage", 1000));
+    }
+
+
+    /**
+     * How long a new connection may take to send its first request, so clients that connect and send
+     * nothing cannot hold a worker.
+     *
+     * @return the read timeout in milliseconds (property {@code dic.readTimeoutMs}, default 10000)
+     */
+    public static int readTimeoutMillis() {
+        return Math.max(1, Integer.getInteger("dic.readTimeoutMs", 10_000));
+    }
+
+
+    /**
+     * How long a client may leave a response unread before its connection is dropped.
+     *
+     * @return the write timeout in milliseconds (property {@code dic.writeTimeoutMs}, default 10000)
+     */
+    public static int writeTimeoutMillis() {
+        return Math.max(1, Integer.getInteger("dic.writeTimeoutMs", 10_000));
+    }
+
+
+    /**
+     * How long an accepted connection may wait in the queue for a worker. Connections that waited longer
+     * are closed without a handshake, which clients treat like a full queue, because their client has
+     * most likely given up already.
+     *
+     * @return the maximum queue time in milliseconds (property {@code dic.maxQueueMs}, default 10000), 0 for no limit
+     */
+    public static int maxQueueMillis() {
+        return Math.max(0, Integer.getInteger("dic.maxQueueMs", 10_000));
+    }
+
+
+    /**
+     * How long a kept-alive connection may wait for its next request before it is closed. Idle connections
+     * wait without holding a worker.
+     *
+     * @return the idle timeout in milliseconds (property {@code dic.keepAliveMs}, default 5000)
+     */
+    public static int keepAliveMillis() {
+        return Math.max(1, Integer.getInteger("dic.keepAliveMs", 5000));
+    }
+
+
+    /**
+     * Number of words whose serialised READ response is cached.
+     *
+     * @return the cache capacity (property {@code dic.responseCache.size}, default 10000), 0 to disable the cache
+     */
+    public static int responseCacheSize() {
+        return Math.max(0, Integer.getInteger("dic.responseCache.size", 10_000));
+    }
+
+
+    /**
+     * Size of the pooled direct buffers used for socket I/O. Larger requests still work, but need an
+     * extra allocation; larger responses are sent from several buffers.
+     *
+     * @return the buffer size in bytes (property {@code dic.bufferSize}, default 16384)
+     */
+    public static int bufferSize() {
+        return Math.max(256, Integer.getInteger("dic.bufferSize", 16_384));
+    }
+
+
+    /**
+     * Maximum number of parsed requests waiting in the READ lane and in the MUTATE lane each. Requests
+     * arriving at a full lane are answered with an error.
+     *
+     * @return the lane capacity (property {@code dic.lane.capacity}, default 256)
+     */
+    public static int laneCapacity() {
+        return Math.max(1, Integer.getInteger("dic.lane.capacity", 256));
+    }
+
+
+    /**
+     * @return the scheduling weight of new and kept-alive connections (property {@code dic.lane.intakeWeight}, default 2)
+     */
+    public static int intakeWeight() {
+        return Math.max(1, Integer.getInteger("dic.lane.intakeWeight", 2));
+    }
+
+
+    /**
+     * @return the scheduling weight of read requests (property {@code dic.lane.readWeight}, default 4)
+     */
+    public static int readWeight() {
+        return Math.max(1, Integer.getInteger("dic.lane.readWeight", 4));
+    }
+
+
+    /**
+     * @return the scheduling weight of write requests (property {@code dic.lane.mutateWeight}, default 1)
+     */
+    public static int mutateWeight() {
+        return Math.max(1, Integer.getInteger("dic.lane.mutateWeight", 1));
+    }
+
+
+    /**
+     * Number of workers that writes may never occupy, so reads and new connections progress while the
+     * other workers are busy with writes. At least one worker is always left for writes.
+     *
+     * @return the reserved worker count (property {@code dic.lane.readWorkers}, default 1)
+     */
+    public static int reservedReadWorkers() {
+        return Math.max(0, Integer.getInteger("dic.lane.readWorkers", 1));
+    }
+
+
+    /**
+     * Reloads the dictionary when its file is replaced or changed by another program. Ignored on replicas,
+     * which follow their primary instead.
+     *
+     * @return true if property {@code dic.reload} is true
+     */
+    public static boolean reload() {
+        return Boolean.getBoolean("dic.reload");
+    }
+
+
+    /**
+     * Time the dictionary file must stay unchanged before it is reloaded, so a file written in several
+     * steps is only read once it is complete.
+     *
+     * @return the quiet period in milliseconds (property {@code dic.reload.quietMs}, default 500)
+     */
+    public static int reloadQuietMillis() {
+        return Math.max(0, Integer.getInteger("dic.reload.quietMs", 500));
+    }
+
+
+    /**
+     * Answers READ requests for words that certainly do not exist from a Bloom filter, without reading
+     * the dictionary.
+     *
+     * @return false if property {@code dic.bloom} is false, true otherwise
+     */
+    public static boolean bloomFilter() {
+        return !"false".equalsIgnoreCase(System.getProperty("dic.bloom"));
+    }
+
+
+    /**
+     * Number of words the Bloom filter is sized for. With more words its false positive rate rises.
+     *
+     * @param words the number of words at startup
+     * @return the expected word count (property {@code dic.bloom.capacity}, default twice the words at startup, at least 65536)
+     */
+    public static long bloomCapacity(int words) {
+        return Math.max(1, Long.getLong("dic.bloom.capacity", Math.max(65_536L, 2L * words)));
+    }
+
+
+    /**
+     * Wanted false positive probability of the Bloom filter, i.e. the share of lookups of missing words
+     * that still read the dictionary.
+     *
+     * @return the probability (property {@code dic.bloom.fpp}, default 0.01)
+     */
+    public static double bloomFalsePositiveProbability() {
+        return getDouble("dic.bloom.fpp", 0.01);
+    }
+
+
+    /**
+     * Keeps meanings compressed in memory and writes the dictionary file gzipped. The tiered dictionary keeps
+     * its meanings on disk uncompressed, so the server refuses to start with both {@code dic.compress} and
+     * {@code dic.tiered}.
+     *
+     * @return true if property {@code dic.compress} is true
+     */
+    public static boolean compressMeanings() {
+        return Boolean.getBoolean("dic.compress");
+    }
+
+
+    /**
+     * Keeps only the words in memory and their meanings in a data file, with the most recently read
+     * meanings cached. The tiered dictionary is a single data file, so the server refuses to start with both
+     * {@code dic.tiered} and {@code dic.shards} above 1.
+     *
+     * @return true if property {@code dic.tiered} is true
+     */
+    public static boolean tiered() {
+        return Boolean.getBoolean("dic.tiered");
+    }
+
+
+    /**
+     * Number of meanings the tiered dictionary keeps in memory.
+     *
+     * @return the cache capacity (property {@code dic.tiered.cacheSize}, default 100000)
+     */
+    public static int tieredCacheSize() {
+        return Math.max(1, Integer.getInteger("dic.tiered.cacheSize", 100_000));
+    }
+
+
+    /**
+     * Largest number of SUBSCRIBE connections served at once. Each one holds a thread of its own.
+     *
+     * @return the maximum number of subscribers (property {@code dic.subscribe.max}, default 0, which disables
+     * subscriptions)
+     */
+    public static int subscribeMax() {
+        return Math.max(0, Integer.getInteger("dic.subscribe.max", 0));
+    }
+
+
+    /**
+     * @return the new connections each client address may open per second (property
+     * {@code dic.rate.connections}, default 0 for no limit)
+     */
+    public static double connectionRate() {
+        return Math.max(0, getDouble("dic.rate.connections", 0));
+    }
+
+
+    /**
+     * @return the read requests each client address may send per second (property {@code dic.rate.reads},
+     * default 0 for no limit)
+     */
+    public static double readRate() {
+        return Math.max(0, getDouble("dic.rate.reads", 0));
+    }
+
+
+    /**
+     * @return the write requests each client address may send per second (property
+     * {@code dic.rate.mutations}, default 0 for no limit)
+     */
+    public static double mutationRate() {
+        return Math.max(0, getDouble("dic.rate.mutations", 0));
+    }
+
+
+    /**
+     * Seconds' worth of connections or requests a client may send at once after being idle.
+     *
+     * @return the burst length (property {@code dic.rate.burstSeconds}, default 1)
+     */
+    public static double rateBurstSeconds() {
+        return Math.max(0, getDouble("dic.rate.burstSeconds", 1));
+    }
+
+
+    /**
+     * Largest number of client addresses the rate limiter tracks. Idle ones are forgotten to make room; while
+     * all are busy, new addresses are refused.
+     *
+     * @return the number of clients (property {@code dic.rate.maxClients}, default 65536)
+     */
+    public static int rateMaxClients() {
+        return Math.max(1, Integer.getInteger("dic.rate.maxClients", 65536));
+    }
+
+
+    /**
+     * Longest time a shutdown waits for the connections and requests already taken on to be answered,
+     * before the dictionary is written out regardless.
+     *
+     * @return the drain timeout in milliseconds (property {@code dic.shutdown.drainMs}, default 10000)
+     */
+    public static int drainMillis() {
+        return Math.max(0, Integer.getInteger("dic.shutdown.drainMs", 10000));
+    }
+
+
+    /**
+     * Requests taking at least this long, from when they reached the server until their response was sent,
+     * are logged with the time of each phase.
+     *
+     * @return the threshold in milliseconds (property {@code dic.trace.slowMs}, default 0 to log none)
+     */
+    public static int slowRequestMillis() {
+        return Math.max(0, Integer.getInteger("dic.trace.slowMs", 0));
+    }
+
+
+    /**
+     * Splits a comma separated property value into trimmed, non-empty entries.
+     *
+     * @param value the property value
+     * @return the entries
+     */
+    static List<String> splitList(String value) {
+        List<String> entries = new ArrayList<>();
+        for (String entry : value.split(",")) {
+            if (!entry.isBlank()) {
+                entries.add(entry.trim());
+            }
+        }
+        return entries;
+    }
+
+
+    private static double getDouble(String name, double defaultValue) {
+        try {
+            return Double.parseDouble(System.getProperty(name, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
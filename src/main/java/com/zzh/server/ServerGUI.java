@@ -1,15 +1,22 @@
 package com.zzh.server;
 
+import com.zzh.common.ConsistentHashRing;
 import com.zzh.server.pool.DicPool;
+import com.zzh.server.replication.MutationLog;
+import com.zzh.server.replication.ReadOnlyDictionary;
+import com.zzh.server.replication.ReplicaClient;
+import com.zzh.server.replication.ReplicationServer;
 
-import javax.net.ServerSocketFactory;
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.Predicate;
 
 
 /**
@@ -18,6 +25,12 @@ import java.net.Socket;
  * and stopped through this interface, and the logs of server activity are displayed.
  *
  * <p>
+ * The time each startup phase takes is printed and kept as a {@code startup.*Ms} metric. When the process
+ * is asked to exit, be it by the close button or a signal, the server stops accepting connections, answers
+ * the requests it has taken on within {@link ServerConfig#drainMillis()}, and writes the dictionary out.
+ * </p>
+ *
+ * <p>
  * Created by Zhonghe Zheng, Student ID: 825612.
  * </p>
  */
@@ -30,7 +43,7 @@ public class ServerGUI extends JDialog {
     private JTextField queueText;
     private JLabel queueLabel;
     private JTextArea logs;
-    private static int counter = 0;
+    private static volatile DicServer dicServer;
 
 
     public static void main(String[] args) {
@@ -45,22 +58,91 @@ public class ServerGUI extends JDialog {
             dicFilePath = validatedArgs[1];
         }
 
-        // Initialize the dictionary
-        Dictionary dictionary = null;
+        // Initialize the dictionary, kept on disk or partitioned into shards when configured
+        long phaseStart = System.nanoTime();
+        DicStore dictionary = null;
+        if (ServerConfig.tiered() && ServerConfig.compressMeanings()) {
+            showErrorDialog("dic.compress Cannot Be Combined With dic.tiered, Whose Meanings Stay Uncompressed On Disk", "Error");
+        }
+        if (ServerConfig.tiered() && ServerConfig.shards() > 1) {
+            showErrorDialog("dic.shards Cannot Be Combined With dic.tiered, Which Keeps One Data File", "Error");
+        }
         try {
-            dictionary = new Dictionary(dicFilePath);
+            int shards = ServerConfig.shards();
+            if (ServerConfig.tiered()) {
+                dictionary = new TieredDictionary(dicFilePath, ServerConfig.tieredCacheSize());
+            } else {
+                dictionary = shards > 1 ? new ShardedDictionary(dicFilePath, shards) : new Dictionary(dicFilePath);
+            }
         } catch (IOException e) {
-            JOptionPane.showMessageDialog(null,
-                                          "Dictionary File Is Not In Correct JSON Format, Please Specify A New File",
-                                          "Error",
-                                          JOptionPane.ERROR_MESSAGE);
             e.printStackTrace();
-            System.exit(1);
+            showErrorDialog("Dictionary File Is Not In Correct JSON Format, Please Specify A New File", "Error");
+        }
+
+        phaseStart = phaseDone("load", phaseStart);
+
+        // Words that certainly do not exist are answered without reading the dictionary
+        DicStore store = dictionary;
+        if (ServerConfig.bloomFilter()) {
+            dictionary = new BloomFilteredDictionary(dictionary, ServerConfig.bloomCapacity(dictionary.snapshot().size()),
+                                                     ServerConfig.bloomFalsePositiveProbability());
+            phaseStart = phaseDone("bloomFilter", phaseStart);
+        }
+
+        // A primary streams its changes to replicas, subscribers are streamed the changes they asked for;
+        // a replica follows its primary and only serves reads
+        MutationLog log = null;
+        if (ServerConfig.replicationPort() > 0 || ServerConfig.subscribeMax() > 0) {
+            log = new MutationLog(ServerConfig.replicationLogSize());
+            dictionary.addMutationListener(log);
+        }
+        if (ServerConfig.replicationPort() > 0) {
+            new ReplicationServer(ServerConfig.replicationPort(), dictionary, log).start();
+        }
+        ChangeFeed changeFeed = ServerConfig.subscribeMax() > 0 ? new ChangeFeed(log, ServerConfig.subscribeMax()) : null;
+        // Pick up a dictionary file regenerated by another program, unless this server follows a primary
+        if (ServerConfig.reload() && ServerConfig.replicationPrimary() == null) {
+            Predicate<byte[]> ownWrite = store instanceof Dictionary single ? single::isOwnWrite : content -> false;
+            new DictionaryReloader(dicFilePath, dictionary, ownWrite, ServerConfig.reloadQuietMillis()).start();
+        }
+        if (ServerConfig.replicationPrimary() != null) {
+            new ReplicaClient(ServerConfig.replicationPrimary(), dictionary).start();
+            dictionary = new ReadOnlyDictionary(dictionary);
+        }
+
+        // Only serve this server's share of the words when part of a cluster
+        List<String> clusterNodes = ServerConfig.clusterNodes();
+        if (!clusterNodes.isEmpty()) {
+            ConsistentHashRing<String> ring = new ConsistentHashRing<>(clusterNodes, ServerConfig.virtualNodes());
+            String self = ServerConfig.clusterSelf() != null ? ServerConfig.clusterSelf() : "localhost:" + port;
+            dictionary = new OwnedKeysDictionary(dictionary, ring, self);
         }
 
+        // Popular READ responses are cached until their word changes
+        ResponseCache responseCache = null;
+        if (ServerConfig.responseCacheSize() > 0) {
+            responseCache = new ResponseCache(ServerConfig.responseCacheSize());
+            dictionary.addMutationListener(responseCache);
+        }
+        RequestHandler requestHandler = new RequestHandler(dictionary, responseCache, changeFeed);
+        phaseDone("services", phaseStart);
+
+        // Exiting drains the server and writes out the dictionary
+        DicStore served = dictionary;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(served), "shutdown"));
+
+        // Without a window, start serving straight away with the configured pool size
+        if (ServerConfig.headless()) {
+            dicServer = new DicServer(port, requestHandler, new DicPool(ServerConfig.workers(), ServerConfig.queueSize()));
+            long readyMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+            ServerMetrics.gauge("startup.readyMs", () -> readyMillis);
+            System.out.println("Startup: ready to serve " + readyMillis + " ms after launch");
+            dicServer.serve();
+            return;
+        }
 
         //Start Server GUI
-        new ServerGUI(null, port,dictionary);
+        new ServerGUI(null, port, requestHandler);
     }
 
 
@@ -70,9 +152,9 @@ public class ServerGUI extends JDialog {
      *
      * @param parent the parent frame
      * @param port   server port
-     * @param dictionary Dictionary Object
+     * @param requestHandler the handler processing the client requests
      */
-    public ServerGUI(Frame parent, int port, Dictionary dictionary) {
+    public ServerGUI(Frame parent, int port, RequestHandler requestHandler) {
         super(parent);
         setTitle("Server Thread Pool Control");
         setContentPane(panel);
@@ -81,6 +163,7 @@ public class ServerGUI extends JDialog {
         setDefaultCloseOperation(DISPOSE_ON_CLOSE);
         setLocationRelativeTo(parent);
         setMinimumSize(new Dimension(100, 100));
+        ServerLog.attach(this);
 
         //Set Border Title
         TitledBorder title = BorderFactory.createTitledBorder("Server Thread Pool Control");
@@ -89,10 +172,16 @@ public class ServerGUI extends JDialog {
         panel.setBorder(title);
 
         // Set up the start server button action
-        startServer.addActionListener(e -> handleStartServer(port,dictionary));
+        startServer.addActionListener(e -> handleStartServer(port, requestHandler));
 
-        // Set up the close server button action
+        // Set up the close server button action; closing the window does the same, so the shutdown hook runs
         closeServer.addActionListener(e -> System.exit(0));
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                System.exit(0);
+            }
+        });
 
         setVisible(true);
     }
@@ -103,9 +192,9 @@ public class ServerGUI extends JDialog {
      * Validates input fields, initializes the thread pool, and starts the server in a new thread.
      *
      * @param port   server port
-     * @param dictionary Dictionary Object
+     * @param requestHandler the handler processing the client requests
      */
-    private void handleStartServer(int port, Dictionary dictionary) {
+    private void handleStartServer(int port, RequestHandler requestHandler) {
         startServer.setEnabled(false);
         closeServer.setEnabled(true);
         threadWorkerText.setEditable(false);
@@ -130,50 +219,41 @@ public class ServerGUI extends JDialog {
             return;
         }
 
-        DicPool dicPool = new DicPool(workerNum, queueNum, this);
-        new Thread(() -> startServer(port,dictionary, dicPool)).start();
+        DicPool dicPool = new DicPool(workerNum, queueNum);
+        dicServer = new DicServer(port, requestHandler, dicPool);
+        new Thread(dicServer::serve).start();
     }
 
 
     /**
-     * Starts the server and continuously listens for client connections.
-     * Creates a new thread from the pool for each incoming client connection.
+     * Records how long a startup phase took, as the {@code startup.<phase>Ms} metric and on the console.
      *
-     * @param port   server port
-     * @param dictionary Dictionary Object
-     * @param dicPool the thread pool for handling client connections
+     * @param phase     the name of the phase
+     * @param startedAt the {@link System#nanoTime()} at which the phase started
+     * @return the {@link System#nanoTime()} at which the next phase starts
      */
-    private void startServer(int port,Dictionary dictionary, DicPool dicPool) {
-        // Create a ServerSocketFactory instance to create the ServerSocket
-        ServerSocketFactory factory = ServerSocketFactory.getDefault();
-
-        // Try to create a ServerSocket on the specified port, automatically close
-        try (ServerSocket server = factory.createServerSocket(port)) {
-            System.out.println("Waiting for client connection-");
-
-            // Continuously wait for client connections
-            while (true) {
-                // Accept a client connection; returns a Socket object representing the client
-                Socket clientSocket = server.accept();
-                counter++;
-                System.out.println("Reqeuest: " + counter + " Connected");
-
-                // Handle the client connection using the custom thread pool
-                try {
-                    dicPool.execute(new SocketRunner(counter, dictionary, clientSocket));
-                } catch (IllegalStateException e) {
-                    JOptionPane.showMessageDialog(null, "A New Client Connection Rejected: Exceeded Maximum ServerLoad",
-                                                  "Warning",
-                                                  JOptionPane.ERROR_MESSAGE);
-                    clientSocket.close();
-                }
-            }
-        } catch (IOException e) {
-            // Handle any IOExceptions that may occur
-            JOptionPane.showMessageDialog(null, "Error In Socket Creation/Connection, Please Try Again", "Error",
-                                          JOptionPane.ERROR_MESSAGE);
-            e.printStackTrace();
+    private static long phaseDone(String phase, long startedAt) {
+        long millis = (System.nanoTime() - startedAt) / 1_000_000;
+        ServerMetrics.gauge("startup." + phase + "Ms", () -> millis);
+        System.out.println("Startup: " + phase + " took " + millis + " ms");
+        return System.nanoTime();
+    }
+
+
+    /**
+     * Stops the server when the process exits: no new connections are accepted, the work already taken on is
+     * finished within the drain timeout, and then the dictionary is written out.
+     *
+     * @param dictionary the dictionary served
+     */
+    private static void shutdown(DicStore dictionary) {
+        long started = System.nanoTime();
+        DicServer server = dicServer;
+        if (server != null && !server.shutdown(ServerConfig.drainMillis())) {
+            System.out.println("Shutdown: requests still running after " + ServerConfig.drainMillis() + " ms");
         }
+        dictionary.close();
+        System.out.println("Shutdown: completed in " + (System.nanoTime() - started) / 1_000_000 + " ms");
     }
 
 
@@ -218,12 +298,17 @@ public class ServerGUI extends JDialog {
     /**
      * Displays an error dialog with the specified message and title, and then exits the application.
      * This method is used to handle critical errors where the application cannot continue running.
+     * In headless mode the message is printed to the console instead.
      *
      * @param message the error message to display
      * @param title   the title of the error dialog
      */
     private static void showErrorDialog(String message, String title) {
-        JOptionPane.showMessageDialog(null, message, title, JOptionPane.ERROR_MESSAGE);
+        if (ServerConfig.headless()) {
+            System.err.println(title + ": " + message);
+        } else {
+            JOptionPane.showMessageDialog(null, message, title, JOptionPane.ERROR_MESSAGE);
+        }
         System.exit(1);
     }
 
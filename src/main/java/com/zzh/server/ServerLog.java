@@ -0,0 +1,60 @@
+package com.zzh.server;
+
+import javax.swing.*;
+
+
+/**
+ * The ServerLog class routes server messages either to the {@link ServerGUI} window or, when the
+ * server runs headless, to the console. Error dialogs are only shown when a window is attached,
+ * so worker threads never fail with a HeadlessException.
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public final class ServerLog {
+    private static volatile ServerGUI serverGUI;
+
+    private ServerLog() {
+    }
+
+
+    /**
+     * Sends subsequent log messages to the given window.
+     *
+     * @param gui the ServerGUI displaying the logs
+     */
+    static void attach(ServerGUI gui) {
+        serverGUI = gui;
+    }
+
+
+    /**
+     * Appends a line to the server logs.
+     *
+     * @param message the message, without trailing newline
+     */
+    public static void info(String message) {
+        ServerGUI gui = serverGUI;
+        if (gui != null) {
+            gui.appendLogs(message + "\n");
+        } else {
+            System.out.println(message);
+        }
+    }
+
+
+    /**
+     * Reports an error, as a dialog when a window is attached and on the console otherwise.
+     *
+     * @param message the error message
+     * @param title   the title of the error dialog
+     */
+    public static void error(String message, String title) {
+        if (serverGUI != null) {
+            JOptionPane.showMessageDialog(null, message, title, JOptionPane.ERROR_MESSAGE);
+        } else {
+            System.err.println(title + ": " + message);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.zzh.server;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+
+/**
+ * The ServerMetrics class is a process-wide registry of named counters and gauges.
+ * Counters are {@link LongAdder}s so hot paths can update them without contention; gauges are
+ * read on demand. A snapshot of all metrics is returned to clients by the STATS action.
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public final class ServerMetrics {
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    private ServerMetrics() {
+    }
+
+
+    /**
+     * Returns the counter with the given name, creating it on first use.
+     * Callers on hot paths should keep the returned counter in a field.
+     *
+     * @param name the metric name, e.g. {@code replication.applied}
+     * @return the counter
+     */
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+
+    /**
+     * Registers (or replaces) a gauge whose value is computed when metrics are read.
+     *
+     * @param name  the metric name
+     * @param value supplies the current value
+     */
+    public static void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+
+    /**
+     * @return the current value of every counter and gauge, sorted by name
+     */
+    public static TreeMap<String, Long> snapshot() {
+        TreeMap<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        return values;
+    }
+}
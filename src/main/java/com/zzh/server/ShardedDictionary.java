@@ -0,0 +1,451 @@
+package com.zzh.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * The ShardedDictionary class hash-partitions words across a fixed number of {@link Dictionary} shards.
+ * Every shard has its own lock, its own in-memory map and its own JSON file, so operations on words
+ * in different shards run in parallel and a write only rewrites the file of the shard it touched.
+ *
+ * <p>
+ * Shard files are stored next to the dictionary file as {@code <file>.shard-<i>}. On first start they
+ * are seeded from the dictionary file; afterwards the shard files are the source of truth. If the shard
+ * count is changed between runs, the existing shard files are merged and re-partitioned.
+ * </p>
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class ShardedDictionary implements DicStore {
+    private final Dictionary[] shards;
+    private final String filePath;
+
+
+    /**
+     * Constructs a ShardedDictionary by loading (or seeding) the shard files in parallel.
+     *
+     * @param filePath   the path to the JSON dictionary file the shards are derived from
+     * @param shardCount the number of shards to partition the words into
+     * @throws IOException if there is an error reading or writing a dictionary file
+     */
+    public ShardedDictionary(String filePath, int shardCount) throws IOException {
+        this.filePath = filePath;
+        this.shards = new Dictionary[shardCount];
+
+        List<File> existing = findShardFiles(filePath);
+        ExecutorService loader = Executors.newFixedThreadPool(
+                Math.min(shardCount, Runtime.getRuntime().availableProcessors()));
+        try {
+            if (existing.size() == shardCount && sameShardLayout(existing)) {
+                loadShards(loader);
+            } else {
+                repartition(loader, existing);
+            }
+        } finally {
+            loader.shutdown();
+        }
+    }
+
+
+    @Override
+    public HashMap<String, String> createWord(String key, String meaning) {
+        return shardFor(key).createWord(key, meaning);
+    }
+
+
+    @Override
+    public HashMap<String, String> readWord(String key) {
+        return shardFor(key).readWord(key);
+    }
+
+
+    @Override
+    public HashMap<String, String> updateWord(String key, String curMeaning, String updatedMeaning) {
+        return shardFor(key).updateWord(key, curMeaning, updatedMeaning);
+    }
+
+
+    @Override
+    public HashMap<String, String> deleteWord(String key) {
+        return shardFor(key).deleteWord(key);
+    }
+
+
+    @Override
+    public HashMap<String, String> appendWord(String key, String newMeaning) {
+        return shardFor(key).appendWord(key, newMeaning);
+    }
+
+
+    @Override
+    public void addMutationListener(MutationListener listener) {
+        for (Dictionary shard : shards) {
+            shard.addMutationListener(listener);
+        }
+    }
+
+
+    @Override
+    public void applyMutation(String action, String key, String meaning) {
+        shardFor(key).applyMutation(action, key, meaning);
+    }
+
+
+    @Override
+    public int replaceAll(Map<String, String> entries) {
+        List<HashMap<String, String>> partitions = partition(entries);
+        int changed = 0;
+        for (int i = 0; i < shards.length; i++) {
+            changed += shards[i].replaceAll(partitions.get(i));
+        }
+        return changed;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * All shard locks are held for the instant it takes to grab every shard's current version, so the
+     * combined view is one point in time across shards. Nothing is copied.
+     */
+    @Override
+    public Map<String, String> snapshot() {
+        List<Map<String, String>> versions = new ArrayList<>(shards.length);
+        lockAndCollect(0, versions);
+        return new ShardedSnapshot(versions);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * Every shard is scanned from the same position and the sorted results are merged.
+     */
+    @Override
+    public List<String> scanKeys(String from, boolean inclusive, int limit) {
+        PriorityQueue<ShardPage> heads = new PriorityQueue<>((a, b) -> a.head().compareTo(b.head()));
+        for (Dictionary shard : shards) {
+            List<String> page = shard.scanKeys(from, inclusive, limit);
+            if (!page.isEmpty()) {
+                heads.add(new ShardPage(page));
+            }
+        }
+
+        List<String> keys = new ArrayList<>(Math.min(limit, 1024));
+        while (keys.size() < limit && !heads.isEmpty()) {
+            ShardPage head = heads.poll();
+            keys.add(head.head());
+            if (++head.position < head.keys.size()) {
+                heads.add(head);
+            }
+        }
+        return keys;
+    }
+
+
+    /**
+     * One shard's sorted page of words and the position of the next word to merge.
+     */
+    private static final class ShardPage {
+        private final List<String> keys;
+        private int position;
+
+        ShardPage(List<String> keys) {
+            this.keys = keys;
+        }
+
+        String head() {
+            return keys.get(position);
+        }
+    }
+
+
+    /**
+     * Locks the shards one after another, in index order, and collects their versions once all are held.
+     * Writers only ever hold a single shard lock, so the fixed order cannot deadlock.
+     */
+    private void lockAndCollect(int shard, List<Map<String, String>> versions) {
+        if (shard == shards.length) {
+            for (Dictionary dictionary : shards) {
+                versions.add(dictionary.snapshot());
+            }
+            return;
+        }
+        synchronized (shards[shard]) {
+            lockAndCollect(shard + 1, versions);
+        }
+    }
+
+
+    /**
+     * A read-only map over one immutable version per shard.
+     */
+    private static final class ShardedSnapshot extends AbstractMap<String, String> {
+        private final List<Map<String, String>> versions;
+
+        ShardedSnapshot(List<Map<String, String>> versions) {
+            this.versions = versions;
+        }
+
+        @Override
+        public String get(Object key) {
+            return key instanceof String word ? versions.get(shardIndex(word, versions.size())).get(word) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (Map<String, String> version : versions) {
+                size += version.size();
+            }
+            return size;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    Iterator<Map<String, String>> shardIterator = versions.iterator();
+                    return new Iterator<>() {
+                        private Iterator<Entry<String, String>> current = Collections.emptyIterator();
+
+                        @Override
+                        public boolean hasNext() {
+                            while (!current.hasNext() && shardIterator.hasNext()) {
+                                current = shardIterator.next().entrySet().iterator();
+                            }
+                            return current.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            return current.next();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return ShardedSnapshot.this.size();
+                }
+            };
+        }
+    }
+
+
+    /**
+     * Splits words into one map per shard.
+     *
+     * @param entries the words and meanings to split
+     * @return the words of every shard, indexed by shard number
+     */
+    private List<HashMap<String, String>> partition(Map<String, String> entries) {
+        List<HashMap<String, String>> partitions = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            partitions.add(new HashMap<>());
+        }
+        entries.forEach((key, meaning) -> partitions.get(shardIndex(key, shards.length)).put(key, meaning));
+        return partitions;
+    }
+
+
+    /**
+     * Finds the shard responsible for a word.
+     *
+     * @param key the word
+     * @return the shard owning the word
+     */
+    private Dictionary shardFor(String key) {
+        return shards[shardIndex(key, shards.length)];
+    }
+
+
+    /**
+     * Maps a word to a shard index. The hash is spread so that words with similar
+     * hash codes do not cluster on the same shard.
+     *
+     * @param key        the word
+     * @param shardCount the number of shards
+     * @return the shard index in the range [0, shardCount)
+     */
+    static int shardIndex(String key, int shardCount) {
+        int h = key.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), shardCount);
+    }
+
+
+    /**
+     * Loads every shard from its own file in parallel.
+     *
+     * @param loader the executor used for parallel loading
+     * @throws IOException if a shard file cannot be read
+     */
+    private void loadShards(ExecutorService loader) throws IOException {
+        List<Callable<Dictionary>> tasks = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            String shardPath = shardPath(i);
+            tasks.add(() -> new Dictionary(shardPath));
+        }
+        List<Dictionary> loaded = invokeAll(loader, tasks);
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = loaded.get(i);
+        }
+    }
+
+
+    /**
+     * Reads the existing shard files (or the dictionary file when no shard exists yet),
+     * partitions the words into the configured number of shards and writes every shard file in parallel.
+     *
+     * @param loader   the executor used for parallel loading and writing
+     * @param existing the shard files found on disk
+     * @throws IOException if a file cannot be read or written
+     */
+    private void repartition(ExecutorService loader, List<File> existing) throws IOException {
+        List<Callable<HashMap<String, String>>> reads = new ArrayList<>();
+        if (existing.isEmpty()) {
+            reads.add(() -> Dictionary.readJSONDictionary(filePath));
+        } else {
+            for (File file : existing) {
+                reads.add(() -> Dictionary.readJSONDictionary(file.getPath()));
+            }
+        }
+
+        HashMap<String, String> merged = new HashMap<>();
+        for (HashMap<String, String> source : invokeAll(loader, reads)) {
+            merged.putAll(source);
+        }
+        List<HashMap<String, String>> partitions = partition(merged);
+
+        List<Callable<Dictionary>> writes = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            Dictionary shard = new Dictionary(shardPath(i), partitions.get(i));
+            shards[i] = shard;
+            writes.add(() -> {
+                if (shard.writeJSONDictionary() != null) {
+                    throw new IOException("Could not write shard file");
+                }
+                return shard;
+            });
+        }
+        invokeAll(loader, writes);
+
+        // Shard files beyond the new shard count have been merged into the new layout
+        for (File file : existing) {
+            if (shardNumber(file) >= shards.length && !file.delete()) {
+                ServerLog.info("Could not delete stale shard file: " + file);
+            }
+        }
+    }
+
+
+    /**
+     * Runs the tasks on the executor and waits for all of them, unwrapping IOExceptions.
+     *
+     * @param executor the executor to run the tasks on
+     * @param tasks    the tasks to run
+     * @return the task results, in task order
+     * @throws IOException if any task failed
+     */
+    private static <T> List<T> invokeAll(ExecutorService executor, List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>();
+        try {
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading dictionary shards", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error loading dictionary shards", e.getCause());
+        }
+        return results;
+    }
+
+
+    private String shardPath(int shard) {
+        return filePath + ".shard-" + shard;
+    }
+
+
+    /**
+     * Checks that the shard files found on disk are numbered 0 to n-1.
+     */
+    private static boolean sameShardLayout(List<File> files) {
+        for (File file : files) {
+            if (shardNumber(file) >= files.size()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static int shardNumber(File shardFile) {
+        Matcher matcher = Pattern.compile("\\.shard-(\\d+)$").matcher(shardFile.getName());
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : Integer.MAX_VALUE;
+    }
+
+
+    /**
+     * Lists the shard files that belong to the given dictionary file.
+     *
+     * @param filePath the path to the JSON dictionary file
+     * @return the shard files on disk, possibly empty
+     */
+    private static List<File> findShardFiles(String filePath) {
+        File file = new File(filePath).getAbsoluteFile();
+        String prefix = file.getName() + ".shard-";
+        File[] found = file.getParentFile().listFiles(
+                (dir, name) -> name.startsWith(prefix) && name.substring(prefix.length()).matches("\\d+"));
+        return found == null ? new ArrayList<>() : new ArrayList<>(List.of(found));
+    }
+
+
+    @Override
+    public void close() {
+        for (Dictionary shard : shards) {
+            shard.close();
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "ShardedDictionary{" +
+                "shards=" + shards.length +
+                ", filePath='" + filePath + '\'' +
+                '}';
+    }
+}
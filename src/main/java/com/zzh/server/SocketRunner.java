@@ -1,13 +1,27 @@
 package com.zzh.server;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.zzh.server.pool.BufferPool;
+import com.zzh.server.pool.DicPool;
+import com.zzh.server.pool.Lane;
+import com.zzh.server.pool.PooledOutputStream;
+import com.zzh.server.pool.RateLimiter;
 
-import javax.swing.*;
-import java.io.*;
-import java.net.Socket;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 
 /**
@@ -16,149 +30,502 @@ import java.util.Map;
  * Dictionary, and sends responses back to the client.
  *
  * <p>
+ * Requests are read into a pooled direct buffer and parsed from there by one non-blocking parser per
+ * connection, and responses are serialised into pooled direct buffers and sent with one gathering write,
+ * so a kept-alive connection does not allocate streams, parsers or buffers per request. The channel is
+ * non-blocking and waits on its own selector, which is how the read, write and keep-alive timeouts are applied.
+ * </p>
+ *
+ * <p>
+ * Work the client no longer waits for is shed: a connection that sat in the queue for longer than
+ * {@link ServerConfig#maxQueueMillis()} is closed unanswered, and a request whose "deadlineMs" budget
+ * has run out is answered with an error without touching the dictionary. A client sending more reads or
+ * writes than its {@link RateLimiter} allows is answered with an error before the request is queued.
+ * Each drop reason has a counter.
+ * </p>
+ *
+ * <p>
+ * The phases of every answered request are timed by the connection's {@link RequestTrace}.
+ * </p>
+ *
+ * <p>
  * Created by Zhonghe Zheng, Student ID: 825612.
  * </p>
  */
 public class SocketRunner implements Runnable {
+    private static final LongAdder queueTimeDrops = ServerMetrics.counter("drops.queueTime");
+    private static final LongAdder deadlineDrops = ServerMetrics.counter("drops.deadline");
+    private static final LongAdder readTimeoutDrops = ServerMetrics.counter("drops.readTimeout");
+    private static final LongAdder writeTimeoutDrops = ServerMetrics.counter("drops.writeTimeout");
+    private static final LongAdder laneFullDrops = ServerMetrics.counter("drops.laneFull");
+    private static final long SHUTDOWN_CHECK_MILLIS = 200;
+    private static final Map<String, String> NO_REQUEST_YET = Map.of();
     private int requestCounter;
-    private Dictionary dictionary;
-    private Socket clientSocket;
+    private RequestHandler requestHandler;
+    private SocketChannel clientChannel;
+    private BufferPool bufferPool;
+    private DicPool dicPool;
+    private RateLimiter rateLimiter;
+    private InetAddress clientAddress;
+    private long acceptedAt;
+    private long keepAliveMillis;
+    private PooledOutputStream writer;
+    private final Map<String, String> requestMap = new HashMap<>();
+    private boolean pendingRequest;
+    private String rejected;
+    private boolean rejectedBusy;
+    private long receivedAt;
+    private int responses;
+    private Selector selector;
+    private SelectionKey selectionKey;
+    private ByteBuffer readBuffer;
+    private JsonParser parser;
+    private ByteBufferFeeder feeder;
+    private final RequestTrace trace = new RequestTrace();
+    private long enqueuedAt;
+    private long idleSince;
 
 
     /**
-     * Constructs a SocketRunner with the specified thread number, dictionary, and client socket.
+     * Constructs a SocketRunner with the specified thread number, request handler, and client channel.
      *
      * @param requestCounter the number identifying this thread
-     * @param dictionary   the Dictionary instance to be used for processing requests
-     * @param clientSocket the client socket for communication
+     * @param requestHandler the RequestHandler processing the client's requests
+     * @param clientChannel  the client channel for communication
+     * @param bufferPool     the pool supplying the I/O buffers
+     * @param dicPool        the pool whose lanes the connection's requests are queued in
+     * @param rateLimiter    the limiter of the client's request rates
+     * @param clientAddress  the address of the client
+     * @param acceptedAt     the {@link System#nanoTime()} at which the connection was accepted
      */
-    public SocketRunner(int requestCounter, Dictionary dictionary, Socket clientSocket) {
+    public SocketRunner(int requestCounter, RequestHandler requestHandler, SocketChannel clientChannel,
+                        BufferPool bufferPool, DicPool dicPool, RateLimiter rateLimiter, InetAddress clientAddress,
+                        long acceptedAt) {
         this.requestCounter = requestCounter;
-        this.dictionary = dictionary;
-        this.clientSocket = clientSocket;
+        this.requestHandler = requestHandler;
+        this.clientChannel = clientChannel;
+        this.bufferPool = bufferPool;
+        this.dicPool = dicPool;
+        this.rateLimiter = rateLimiter;
+        this.clientAddress = clientAddress;
+        this.acceptedAt = acceptedAt;
     }
 
 
     /**
-     * The main run method that handles client-server communication.
-     * It reads the client's request, processes it using the Dictionary, and sends back a response.
-     * This method also manages I/O streams and ensures resources are properly closed.
+     * The main run method that handles client-server communication. A SocketRunner runs several times
+     * over its connection's life: on the INTAKE lane it reads the client's next request and hands itself
+     * to the READ or MUTATE lane, where it processes the request using the RequestHandler and sends back a
+     * response. A request with "keepAlive" set to "true" keeps the connection open for the next request, until the
+     * client closes it or stays idle for longer than the keep-alive timeout. While idle, the connection waits in
+     * the pool's keep-alive watcher and returns to the INTAKE lane when its next request arrives. A SUBSCRIBE request hands the
+     * connection over to the {@link ChangeFeed}.
+     * This method also manages the buffers and ensures resources are properly closed.
      */
     @Override
     public void run() {
-        // Create ObjectMapper instance for JSON parsing
-        ObjectMapper objectMapper = new ObjectMapper();
-
-        BufferedWriter writer = null;
-        BufferedReader reader = null;
-        Map<String, String> requestMap = null;
-
-        try {
-            reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            writer = new BufferedWriter(new OutputStreamWriter(clientSocket.getOutputStream()));
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(null,
-                                          "Thread-" + requestCounter + ": Thread IO Stream Error",
-                                          "Error",
-                                          JOptionPane.ERROR_MESSAGE);
+        boolean handedOver = false;
+        if (writer == null && !open()) {
             return;
         }
+        if (readBuffer == null) {
+            readBuffer = bufferPool.acquire(); // Given back while the connection was idle
+        }
+        if (pendingRequest) {
+            trace.add(RequestTrace.Phase.LANE, enqueuedAt);
+        }
 
         try {
-            //Send thread number as client(User) Number
-            writer.write(this.requestCounter);
-            writer.flush();
-
-            // Read JSON from the client
-            String JSONLine = "";
-            String JSONRequest = "";
-            while ((JSONLine = reader.readLine()) != null) {
-                JSONRequest += JSONLine;
-                if (JSONLine.trim().endsWith("}")) {
-                    break;
+            boolean handOffWhenIdle = false;
+            while (true) {
+                if (pendingRequest) {
+                    respond();
+                    if (!"true".equals(requestMap.get("keepAlive")) || dicPool.isShutdown()) {
+                        break;
+                    }
+                    idleSince = System.nanoTime();
+                    handOffWhenIdle = true;
                 }
-            }
 
-            // Convert the received data to a Map
-            requestMap = objectMapper.readValue(JSONRequest, HashMap.class);
-            HashMap<String, String> responseMap = handleRequest(requestMap);
-            String responseJSON = new ObjectMapper().writeValueAsString(responseMap);
+                // Read JSON from the client into the Map; the first request must arrive within the read timeout,
+                // later ones within what is left of the keep-alive timeout
+                long timeoutMillis = responses == 0 ? ServerConfig.readTimeoutMillis()
+                                                    : Math.max(1, keepAliveMillis - (System.nanoTime() - idleSince) / 1_000_000);
+                Map<String, String> request = readRequest(requestMap, timeoutMillis, handOffWhenIdle);
+                if (request == null) {
+                    break; // Client closed the connection
+                }
+                if (request == NO_REQUEST_YET) {
+                    // Wait for the next request without a worker or buffers; the parser has consumed all input
+                    bufferPool.release(readBuffer);
+                    readBuffer = null;
+                    writer.release();
+                    dicPool.resumeWhenReadable(clientChannel, this, timeoutMillis);
+                    handedOver = true;
+                    return;
+                }
+                handOffWhenIdle = false;
+                pendingRequest = true;
+                receivedAt = responses == 0 ? acceptedAt : System.nanoTime();
+
+                // A client over its rate is refused before its request takes a place in a lane
+                Lane lane = RequestHandler.isMutation(requestMap.get("action")) ? Lane.MUTATE : Lane.READ;
+                if (!rateLimiter.tryAcquire(clientAddress, lane)) {
+                    rejected = "Too many requests, please slow down";
+                    rejectedBusy = true;
+                    continue;
+                }
+
+                // A subscription keeps the connection for itself; a refused one is answered with an error
+                if ("SUBSCRIBE".equals(requestMap.get("action"))) {
+                    if (subscribe()) {
+                        handedOver = true;
+                        return;
+                    }
+                    continue;
+                }
 
-            // Send the response back to the client in string representation of JSON
-            writer.write(responseJSON + "\n");
-            writer.flush();
+                // Queue the request behind others of its kind; this worker is free again. A read with no other
+                // read waiting is answered right away, because queueing it would only add a thread hand-off
+                if (lane == Lane.READ && dicPool.queued(Lane.READ) == 0) {
+                    continue;
+                }
+                enqueuedAt = System.nanoTime();
+                if (dicPool.submit(lane, this)) {
+                    handedOver = true;
+                    return;
+                }
+                laneFullDrops.increment();
+                rejected = "Server is busy, please try again later";
+                rejectedBusy = true;
+            }
+        } catch (SocketTimeoutException e) {
+            System.out.println("Request Number: " + requestCounter + " " + e.getMessage());
         } catch (JsonProcessingException e) {
-            JOptionPane.showMessageDialog(null,
-                                          "Error In Processing JSON, Please Make Sure File Has Correct Dictionary Structure",
-                                          "Error",
-                                          JOptionPane.ERROR_MESSAGE);
+            ServerLog.error("Error In Processing JSON, Please Make Sure File Has Correct Dictionary Structure", "Error");
             e.printStackTrace();
         } catch (IOException e) {
-            JOptionPane.showMessageDialog(null,
-                                          "Error In Client Server Communication! Client Number Affected: " + requestCounter,
-                                          "Error",
-                                          JOptionPane.ERROR_MESSAGE);
+            ServerLog.error("Error In Client Server Communication! Client Number Affected: " + requestCounter, "Error");
             e.printStackTrace();
         } finally {
-            // Close Resources and Socket
-            try {
-                if (reader != null) reader.close();
-                if (writer != null) writer.close();
-                if (clientSocket != null && !clientSocket.isClosed()) clientSocket.close();
+            if (!handedOver) {
+                close();
                 System.out.println("Request Number: " + requestCounter + " Disconnected");
-            } catch (IOException e) {
-                JOptionPane.showMessageDialog(null,
-                                              "Error closing resources for thread " + requestCounter,
-                                              "Error",
-                                              JOptionPane.ERROR_MESSAGE);
-                e.printStackTrace();
             }
         }
     }
 
 
     /**
-     * Processes the client's request by determining the action (e.g., CREATE, READ, UPDATE, DELETE, APPEND)
-     * and interacting with the Dictionary accordingly. Returns the response as a HashMap.
+     * Prepares the connection on its first run and sends the handshake.
      *
-     * @param requestMap the request data sent by the client
-     * @return a HashMap containing the response data
+     * @return false if the connection was shed or could not be set up, and has been closed
      */
-    private HashMap<String, String> handleRequest(Map<String, String> requestMap) {
-        String action = requestMap.get("action");
-        String key = requestMap.get("word");
-        String meaning = requestMap.get("meaning");
-        String specialMeaning = requestMap.get("specialMeaning");
-
-        HashMap<String, String> responseMap = new HashMap<>();
-        responseMap.put("code", "ERROR");
-        responseMap.put("msg", "There is something wrong, please try again");
-
-        //Server side validation for request action and word key
-        if (action == null || key == null || action.isEmpty() || key.isEmpty()) {
-            responseMap.put("msg", "Word can not be empty, please try again");
-            return responseMap;
-        }
-
-
-        responseMap = switch (action) {
-            case "CREATE" -> this.dictionary.createWord(key, meaning);
-            case "READ" -> this.dictionary.readWord(key);
-            case "UPDATE" -> this.dictionary.updateWord(key, meaning, specialMeaning);
-            case "DELETE" -> this.dictionary.deleteWord(key);
-            case "APPEND" -> this.dictionary.appendWord(key, meaning);
-            default -> responseMap;
+    private boolean open() {
+        trace.add(RequestTrace.Phase.QUEUE, acceptedAt);
+        // The client has most likely given up on a connection that waited too long for a worker
+        long queuedMillis = (System.nanoTime() - acceptedAt) / 1_000_000;
+        if (ServerConfig.maxQueueMillis() > 0 && queuedMillis > ServerConfig.maxQueueMillis()) {
+            queueTimeDrops.increment();
+            ServerLog.info("Request Number: " + requestCounter + " Shed After " + queuedMillis + "ms In Queue");
+            close();
+            return false;
+        }
+
+        try {
+            clientChannel.configureBlocking(false);
+            selector = Selector.open();
+            selectionKey = clientChannel.register(selector, SelectionKey.OP_READ);
+            readBuffer = bufferPool.acquire();
+            parser = RequestHandler.objectMapper.getFactory().createNonBlockingByteBufferParser();
+            feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+            writer = new PooledOutputStream(bufferPool);
+            keepAliveMillis = ServerConfig.keepAliveMillis();
+
+            //Send thread number as client(User) Number
+            writer.write(String.valueOf((char) this.requestCounter).getBytes(StandardCharsets.UTF_8));
+            flush();
+            return true;
+        } catch (IOException e) {
+            ServerLog.error("Thread-" + requestCounter + ": Thread IO Stream Error", "Error");
+            close();
+            return false;
+        }
+    }
+
+
+    /**
+     * Answers the pending request, unless it was rejected or its deadline has passed.
+     */
+    private void respond() throws IOException {
+        if (rejected != null) {
+            requestHandler.reject(rejectedBusy ? RequestHandler.BUSY : "ERROR", rejected, writer);
+            rejected = null;
+            rejectedBusy = false;
+        } else if (isExpired(requestMap, receivedAt)) {
+            deadlineDrops.increment();
+            requestHandler.reject("Request deadline expired before the server could process it", writer);
+        } else {
+            long executeStart = System.nanoTime();
+            trace.attach();
+            try {
+                requestHandler.respond(requestMap, writer);
+            } finally {
+                trace.detach();
+            }
+            trace.add(RequestTrace.Phase.EXECUTE, executeStart);
+        }
+
+        // Send the response back to the client in string representation of JSON
+        long writeStart = System.nanoTime();
+        flush();
+        trace.add(RequestTrace.Phase.WRITE, writeStart);
+        dicPool.releaseMutation();
+        responses++;
+        pendingRequest = false;
+        trace.finish(requestMap, receivedAt, requestCounter);
+    }
+
+
+    /**
+     * Hands the connection to the {@link ChangeFeed} for a SUBSCRIBE request. From then on the subscription's
+     * thread writes to the connection and closes it.
+     *
+     * @return true if the subscription took over the connection, false if it was refused
+     */
+    private boolean subscribe() {
+        ChangeFeed changeFeed = requestHandler.getChangeFeed();
+        if (changeFeed == null) {
+            rejected = "Subscriptions are not enabled on this server";
+            return false;
+        }
+        ChangeFeed.Connection connection = new ChangeFeed.Connection() {
+            @Override
+            public PooledOutputStream out() {
+                return writer;
+            }
+
+            @Override
+            public void flush() throws IOException {
+                SocketRunner.this.flush();
+            }
+
+            @Override
+            public boolean isClosed() throws IOException {
+                // Anything the subscriber sends is ignored, only the end of the stream matters
+                readBuffer.clear();
+                return clientChannel.read(readBuffer) < 0;
+            }
+
+            @Override
+            public void close() {
+                SocketRunner.this.close();
+                System.out.println("Request Number: " + requestCounter + " Unsubscribed");
+            }
         };
+        if (changeFeed.subscribe(requestMap, connection, "subscriber-" + requestCounter)) {
+            return true;
+        }
+        rejected = "Too many subscribers, please try again later";
+        return false;
+    }
+
 
-        return responseMap;
+    /**
+     * Reads the next request. Requests are fed to a non-blocking JSON parser, so a request may span several
+     * reads, and requests sent back to back are answered one after the other. Only top level fields are
+     * kept, each as its JSON text.
+     *
+     * @param requestMap      the map to fill, cleared first and reused for every request
+     * @param timeoutMillis   how long to wait for the request, 0 to wait forever
+     * @param handOffWhenIdle true to return {@link #NO_REQUEST_YET} instead of waiting if nothing of the
+     *                        request has arrived yet
+     * @return the filled request map, {@link #NO_REQUEST_YET}, or null if the client closed the connection
+     * before sending another request
+     * @throws SocketTimeoutException if no request arrived in time
+     * @throws IOException            if the channel cannot be read or the request is not a JSON object
+     */
+    private Map<String, String> readRequest(Map<String, String> requestMap, long timeoutMillis,
+                                            boolean handOffWhenIdle) throws IOException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        requestMap.clear();
+        int depth = 0;
+        String field = null;
+        long parseStart = 0;
+        while (true) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.NOT_AVAILABLE) {
+                if (handOffWhenIdle && depth == 0) {
+                    if (!readAvailable()) {
+                        return NO_REQUEST_YET;
+                    }
+                    continue;
+                }
+                fillReadBuffer(deadline, timeoutMillis, depth == 0 && responses > 0);
+                continue;
+            }
+            if (token == null) {
+                return null;
+            }
+            if (depth == 0 && token != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "A request must be a JSON object");
+            }
+
+            switch (token) {
+                case START_OBJECT, START_ARRAY -> {
+                    if (depth++ == 0) {
+                        parseStart = System.nanoTime();
+                    }
+                }
+                case END_OBJECT, END_ARRAY -> {
+                    if (--depth == 0) {
+                        trace.add(RequestTrace.Phase.PARSE, parseStart);
+                        return requestMap;
+                    }
+                }
+                case FIELD_NAME -> field = parser.currentName();
+                case VALUE_NULL -> {
+                    if (depth == 1) requestMap.put(field, null);
+                }
+                default -> {
+                    if (depth == 1) requestMap.put(field, parser.getText());
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Checks the optional "deadlineMs" field, the number of milliseconds the client is willing to wait for
+     * the response. The first request is timed from the accept, because it waited in the queue with its
+     * connection; later requests are timed from when they were read, so their wait in a lane counts.
+     *
+     * @param requestMap the request
+     * @param receivedAt the {@link System#nanoTime()} at which the request reached the server
+     * @return true if the request's deadline has passed
+     */
+    private static boolean isExpired(Map<String, String> requestMap, long receivedAt) {
+        String deadline = requestMap.get("deadlineMs");
+        if (deadline == null) {
+            return false;
+        }
+        try {
+            return (System.nanoTime() - receivedAt) / 1_000_000 > Long.parseLong(deadline);
+        } catch (NumberFormatException e) {
+            return false; // A malformed deadline is ignored rather than failing the request
+        }
+    }
+
+
+    /**
+     * Feeds the bytes the client has sent already to the parser, without waiting.
+     *
+     * @return false if there were none
+     */
+    private boolean readAvailable() throws IOException {
+        readBuffer.clear();
+        int read = clientChannel.read(readBuffer);
+        if (read < 0) {
+            feeder.endOfInput();
+            return true;
+        }
+        if (read > 0) {
+            readBuffer.flip();
+            feeder.feedInput(readBuffer);
+            return true;
+        }
+        return false;
     }
 
+
+    /**
+     * Reads the next bytes from the client into the read buffer and feeds them to the parser. A kept-alive
+     * connection waiting for its next request is closed once the pool shuts down, so it does not hold up
+     * the drain; the pool is checked every {@value #SHUTDOWN_CHECK_MILLIS} ms while waiting.
+     *
+     * @param idle true if no part of the next request of a kept-alive connection has arrived yet
+     */
+    private void fillReadBuffer(long deadline, long timeoutMillis, boolean idle) throws IOException {
+        readBuffer.clear();
+        while (true) {
+            int read = clientChannel.read(readBuffer);
+            if (read < 0) {
+                feeder.endOfInput();
+                return;
+            }
+            if (read > 0) {
+                readBuffer.flip();
+                feeder.feedInput(readBuffer);
+                return;
+            }
+
+            long waitMillis = 0;
+            if (timeoutMillis > 0) {
+                waitMillis = (deadline - System.nanoTime()) / 1_000_000;
+                if (waitMillis <= 0) {
+                    if (responses == 0) {
+                        readTimeoutDrops.increment();
+                        throw new SocketTimeoutException("Read Timeout: No Request Within " + timeoutMillis + "ms");
+                    }
+                    throw new SocketTimeoutException("Idle Timeout");
+                }
+            }
+            if (idle) {
+                if (dicPool.isShutdown()) {
+                    throw new SocketTimeoutException("Server Shutting Down");
+                }
+                waitMillis = waitMillis == 0 ? SHUTDOWN_CHECK_MILLIS : Math.min(waitMillis, SHUTDOWN_CHECK_MILLIS);
+            }
+            selector.select(waitMillis);
+            selector.selectedKeys().clear();
+        }
+    }
+
+
+    /**
+     * Sends everything written to the writer with gathering writes, waiting while the socket's send buffer is
+     * full, for at most the write timeout without progress.
+     */
+    private void flush() throws IOException {
+        ByteBuffer[] buffers = writer.flip();
+        int count = writer.getCount();
+        while (buffers[count - 1].hasRemaining()) {
+            if (clientChannel.write(buffers, 0, count) == 0) {
+                selectionKey.interestOps(SelectionKey.OP_WRITE);
+                int ready = selector.select(ServerConfig.writeTimeoutMillis());
+                selector.selectedKeys().clear();
+                selectionKey.interestOps(SelectionKey.OP_READ);
+                if (ready == 0) {
+                    writeTimeoutDrops.increment();
+                    throw new SocketTimeoutException("Write Timeout: Client Not Reading");
+                }
+            }
+        }
+        writer.reset();
+    }
+
+
+    private void close() {
+        // Close Resources and Channel
+        try {
+            if (writer != null) writer.close();
+            if (parser != null) parser.close();
+            if (readBuffer != null) bufferPool.release(readBuffer);
+            if (selector != null) selector.close();
+            if (clientChannel.isOpen()) clientChannel.close();
+        } catch (IOException e) {
+            ServerLog.error("Error closing resources for thread " + requestCounter, "Error");
+            e.printStackTrace();
+        }
+    }
+
+
     @Override
     public String toString() {
         return "SocketRunner{" +
                 "requestCounter='" + requestCounter + '\'' +
-                ", dictionary=" + dictionary +
-                ", clientSocket=" + clientSocket +
+                ", requestHandler=" + requestHandler +
+                ", clientChannel=" + clientChannel +
                 '}';
     }
 }
@@ -0,0 +1,890 @@
+package com.zzh.server;
+
+import com.zzh.server.store.LruCache;
+import com.zzh.server.store.PersistentHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+
+/**
+ * The TieredDictionary class keeps only the words in memory and their meanings on disk, so it can serve
+ * dictionaries much larger than the heap. Meanings live in an append-only data file next to the dictionary
+ * file, {@code <file>.data}, and an in-memory index maps every word to the position of its latest meaning.
+ * Recently read meanings are kept in an {@link LruCache}; a cache miss costs one positional
+ * {@link FileChannel} read.
+ *
+ * <p>
+ * Every change appends one record of the word and its new meaning, or a tombstone for a deleted word,
+ * and publishes a new immutable version of the index. Readers never lock: they read the meaning the
+ * version they started with points to. Cached meanings carry the version of the meaning they hold, so a
+ * stale cache entry is simply a miss. Bulk reads, i.e. snapshots, SCAN pages and replication, bypass the
+ * cache so they do not evict the meanings clients read.
+ * </p>
+ *
+ * <p>
+ * When more than half of the file is replaced meanings it is compacted by a background thread: the live
+ * records are copied to a new file, then the records appended meanwhile are copied under the lock, and the
+ * new file atomically replaces the old one.
+ * </p>
+ *
+ * <p>
+ * On first start the data file is seeded from the JSON dictionary file. Records are checksummed, so a
+ * record torn by a crash is detected and cut off when the file is opened again.
+ * </p>
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class TieredDictionary implements DicStore {
+    private static final int HEADER = 12; // Checksum, word length and meaning length (-1 for a tombstone)
+    private static final long MIN_COMPACTION_BYTES = 1 << 20;
+    private final Path dataPath;
+    private volatile Segment segment;
+    private FileChannel retired;
+    private volatile long fileSize;
+    private volatile long liveBytes;
+    private long version;
+    private Thread compaction;
+    private volatile boolean closed;
+    private final LruCache<String, Cached> cache;
+    private final NavigableSet<String> sortedIndex = new ConcurrentSkipListSet<>();
+    private final List<MutationListener> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder hits = ServerMetrics.counter("tiered.cacheHits");
+    private final LongAdder misses = ServerMetrics.counter("tiered.cacheMisses");
+    private final LongAdder diskReadNanos = ServerMetrics.counter("tiered.diskReadNanos");
+    private final LongAdder compactions = ServerMetrics.counter("tiered.compactions");
+
+
+    /**
+     * Where the latest meaning of a word is stored.
+     *
+     * @param offset  the position of the meaning in the data file
+     * @param length  the length of the meaning in bytes
+     * @param version a number identifying this meaning, kept when the file is compacted
+     */
+    private record Location(long offset, int length, long version) {
+    }
+
+
+    /**
+     * A data file together with a version of the index into it, so readers always see a matching pair.
+     */
+    private record Segment(FileChannel channel, PersistentHashMap<String, Location> index) {
+    }
+
+
+    private record Cached(long version, String meaning) {
+    }
+
+
+    /**
+     * Constructs a TieredDictionary, opening the data file next to the dictionary file or seeding it from
+     * the dictionary file if it does not exist yet.
+     *
+     * @param filePath  the path to the JSON dictionary file
+     * @param cacheSize the number of meanings kept in memory
+     * @throws IOException if there is an error reading or writing a file
+     */
+    public TieredDictionary(String filePath, int cacheSize) throws IOException {
+        this.dataPath = Path.of(filePath + ".data");
+        this.cache = new LruCache<>(cacheSize);
+        if (!Files.exists(dataPath)) {
+            seed(Dictionary.readJSONDictionary(filePath));
+        }
+        FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        PersistentHashMap<String, Location> index = recover(channel);
+        this.segment = new Segment(channel, index);
+        this.sortedIndex.addAll(index.keySet());
+
+        ServerMetrics.gauge("tiered.cached", cache::size);
+        ServerMetrics.gauge("tiered.fileBytes", () -> fileSize);
+        ServerMetrics.gauge("tiered.liveBytes", () -> liveBytes);
+        ServerMetrics.gauge("tiered.hitRatePct", () -> {
+            long hit = hits.sum();
+            long total = hit + misses.sum();
+            return total == 0 ? 0 : hit * 100 / total;
+        });
+    }
+
+
+    @Override
+    public synchronized HashMap<String, String> createWord(String key, String meaning) {
+        HashMap<String, String> response = new HashMap<>();
+        response.put("code", "ERROR");
+        if (segment.index().containsKey(key)) {
+            response.put("msg",
+                         "(" + key + ") already exist in the Dictionary! You can try update or append new meaning(s).");
+            return response;
+        } else if (meaning == null || meaning.isEmpty()) {
+            response.put("msg", "(" + key + ") Word meaning(s) cannot be null or empty.");
+            return response;
+        }
+        HashMap<String, String> writeResponse = write("CREATE", key, meaning);
+        if (writeResponse != null) return writeResponse;
+        response.put("msg", "(" + key + ") Word meaning(s) successfully created.");
+        response.put("code", "SUCCESS");
+        return response;
+    }
+
+
+    /**
+     * Reads the meaning of a word from the cache, or from the data file if it is not cached.
+     * Reading does not lock the dictionary.
+     *
+     * @param key the word to be read
+     * @return a response containing the word's meaning or an error message
+     */
+    @Override
+    public HashMap<String, String> readWord(String key) {
+        HashMap<String, String> response = new HashMap<>();
+        response.put("code", "ERROR");
+        String value;
+        try {
+            value = read(segment, key, true);
+        } catch (IOException e) {
+            e.printStackTrace();
+            response.put("msg", "Server error in reading Dictionary file");
+            return response;
+        }
+        if (value == null || value.isEmpty()) {
+            response.put("msg", "(" + key + ") does not exist in the Dictionary!");
+        } else {
+            response.put("msg", value);
+            response.put("code", "SUCCESS");
+        }
+        return response;
+    }
+
+
+    @Override
+    public synchronized HashMap<String, String> updateWord(String key, String curMeaning, String updatedMeaning) {
+        HashMap<String, String> response = new HashMap<>();
+        response.put("code", "ERROR");
+        String originalString = readForWrite(key, response);
+        if (originalString == null) {
+            return response;
+        } else if (curMeaning == null || updatedMeaning == null || curMeaning.isEmpty() || updatedMeaning.isEmpty()) {
+            response.put("msg", "Word meaning(s) cannot be empty.");
+            return response;
+        } else if (!originalString.contains(curMeaning)) {
+            response.put("msg", "Existing meaning not found for the word specified!");
+            return response;
+        }
+        HashMap<String, String> writeResponse = write("UPDATE", key, originalString.replace(curMeaning, updatedMeaning));
+        if (writeResponse != null) return writeResponse;
+        response.put("msg", "(" + key + ") has been updated successfully!");
+        response.put("code", "SUCCESS");
+        return response;
+    }
+
+
+    @Override
+    public synchronized HashMap<String, String> deleteWord(String key) {
+        HashMap<String, String> response = new HashMap<>();
+        response.put("code", "ERROR");
+        if (!segment.index().containsKey(key)) {
+            response.put("msg", "(" + key + ") does not exist in the Dictionary!");
+            return response;
+        }
+        HashMap<String, String> writeResponse = write("DELETE", key, null);
+        if (writeResponse != null) return writeResponse;
+        response.put("msg", "(" + key + ") has been deleted successfully!");
+        response.put("code", "SUCCESS");
+        return response;
+    }
+
+
+    @Override
+    public synchronized HashMap<String, String> appendWord(String key, String newMeaning) {
+        HashMap<String, String> response = new HashMap<>();
+        response.put("code", "ERROR");
+        String originalString = readForWrite(key, response);
+        if (originalString == null) {
+            return response;
+        } else if (newMeaning == null || newMeaning.isEmpty()) {
+            response.put("msg", "New word meaning cannot be empty.");
+            return response;
+        } else if (originalString.contains(newMeaning)) {
+            response.put("msg", "Meaning already exist for the word specified!");
+            return response;
+        }
+        HashMap<String, String> writeResponse = write("APPEND", key, originalString + newMeaning);
+        if (writeResponse != null) return writeResponse;
+        response.put("msg", "New word meaning has been added to (" + key + ") successfully!");
+        response.put("code", "SUCCESS");
+        return response;
+    }
+
+
+    @Override
+    public void addMutationListener(MutationListener listener) {
+        listeners.add(listener);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UncheckedIOException if the data file cannot be read or written
+     */
+    @Override
+    public synchronized void applyMutation(String action, String key, String meaning) {
+        try {
+            // A change may arrive twice, so only what actually changes is applied and reported
+            String previous = read(segment, key, false);
+            if (meaning == null ? previous == null : meaning.equals(previous)) {
+                return;
+            }
+            append(meaning == null ? "DELETE" : previous == null ? "CREATE" : action, key, meaning);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * The differences are worked out from the current meanings without the lock, then appended together
+     * and published as a single new version of the index, so readers see either all of the old words or
+     * all of the new ones.
+     *
+     * @throws UncheckedIOException if the data file cannot be read or written; no word is changed then
+     */
+    @Override
+    public int replaceAll(Map<String, String> entries) {
+        Segment base;
+        long baseVersion;
+        synchronized (this) {
+            base = segment;
+            baseVersion = version;
+        }
+        try {
+            List<String[]> changes = diff(base, entries);
+            synchronized (this) {
+                // Worked out again if another writer got in meanwhile
+                if (version != baseVersion) {
+                    changes = diff(segment, entries);
+                }
+                if (changes.isEmpty()) {
+                    return 0;
+                }
+                appendAll(changes);
+                for (String[] change : changes) {
+                    publish(change[0], change[1], change[2]);
+                }
+                compactIfWasteful();
+                return changes.size();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * Finds the words of a version of the index that differ from the given entries.
+     *
+     * @param from    the version to compare with
+     * @param entries the complete new content
+     * @return the action, word and new meaning of every word that differs
+     * @throws IOException if the data file cannot be read
+     */
+    private List<String[]> diff(Segment from, Map<String, String> entries) throws IOException {
+        List<String[]> changes = new ArrayList<>();
+        for (String key : from.index().keySet()) {
+            if (!entries.containsKey(key)) {
+                changes.add(new String[]{"DELETE", key, null});
+            }
+        }
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            String previous = read(from, entry.getKey(), false);
+            if (!entry.getValue().equals(previous)) {
+                changes.add(new String[]{previous == null ? "CREATE" : "UPDATE", entry.getKey(), entry.getValue()});
+            }
+        }
+        return changes;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * The current index version is kept and meanings are read from disk as they are accessed. A snapshot
+     * still in use after the data file has been compacted twice reads the latest meanings instead.
+     */
+    @Override
+    public Map<String, String> snapshot() {
+        Segment frozen = segment;
+        return new AbstractMap<>() {
+            @Override
+            public String get(Object key) {
+                try {
+                    return key instanceof String word ? read(frozen, word, false) : null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return frozen.index().containsKey(key);
+            }
+
+            @Override
+            public int size() {
+                return frozen.index().size();
+            }
+
+            @Override
+            public Set<String> keySet() {
+                return frozen.index().keySet();
+            }
+
+            @Override
+            public Set<Entry<String, String>> entrySet() {
+                return new AbstractSet<>() {
+                    @Override
+                    public Iterator<Entry<String, String>> iterator() {
+                        Iterator<String> keys = frozen.index().keySet().iterator();
+                        return new Iterator<>() {
+                            @Override
+                            public boolean hasNext() {
+                                return keys.hasNext();
+                            }
+
+                            @Override
+                            public Entry<String, String> next() {
+                                String key = keys.next();
+                                return new SimpleImmutableEntry<>(key, get(key));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return frozen.index().size();
+                    }
+                };
+            }
+        };
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * Words come from a concurrent sorted index, so listing never blocks writers.
+     */
+    @Override
+    public List<String> scanKeys(String from, boolean inclusive, int limit) {
+        List<String> keys = new ArrayList<>(Math.min(limit, 1024));
+        for (String key : from == null ? sortedIndex : sortedIndex.tailSet(from, inclusive)) {
+            if (keys.size() == limit) {
+                break;
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+
+    /**
+     * Reads the current meaning of a word for a change, filling in the error response if there is none.
+     * Called while holding this dictionary's lock.
+     *
+     * @return the meaning, or null if the word does not exist or could not be read
+     */
+    private String readForWrite(String key, HashMap<String, String> response) {
+        try {
+            String meaning = read(segment, key, true);
+            if (meaning == null) {
+                response.put("msg", "(" + key + ") does not exist in the Dictionary!");
+            }
+            return meaning;
+        } catch (IOException e) {
+            e.printStackTrace();
+            response.put("msg", "Server error in reading Dictionary file");
+            return null;
+        }
+    }
+
+
+    /**
+     * Looks up the meaning of a word in a version of the index. If the version's data file has been
+     * closed meanwhile, the word is looked up in the current version instead.
+     *
+     * @param from the version to look the word up in
+     * @param key  the word
+     * @param fill true to count the lookup and cache a meaning read from disk; false for bulk reads
+     * @return the meaning, or null if the word does not exist in that version
+     * @throws IOException if the data file cannot be read
+     */
+    private String read(Segment from, String key, boolean fill) throws IOException {
+        Segment current = from;
+        while (true) {
+            Location location = current.index().get(key);
+            if (location == null) {
+                return null;
+            }
+            Cached cached = cache.get(key);
+            if (cached != null && cached.version() == location.version()) {
+                if (fill) {
+                    hits.increment();
+                }
+                return cached.meaning();
+            }
+            if (fill) {
+                misses.increment();
+            }
+            long start = System.nanoTime();
+            byte[] bytes = new byte[location.length()];
+            try {
+                readFully(current.channel(), bytes, location.offset());
+            } catch (ClosedChannelException e) {
+                reopen(current.channel());
+                if (e instanceof ClosedByInterruptException) {
+                    throw e;
+                }
+                current = segment;
+                continue;
+            }
+            diskReadNanos.add(System.nanoTime() - start);
+            String meaning = new String(bytes, StandardCharsets.UTF_8);
+            if (fill) {
+                cache.put(key, new Cached(location.version(), meaning));
+            }
+            return meaning;
+        }
+    }
+
+
+    /**
+     * Appends a change to the data file and publishes the new version of the index. Called while holding
+     * this dictionary's lock.
+     *
+     * @param action  the operation that caused the change
+     * @param key     the word
+     * @param meaning the new meaning, or null to delete the word
+     * @return null if successful, otherwise a HashMap with an error code and message
+     */
+    private HashMap<String, String> write(String action, String key, String meaning) {
+        try {
+            append(action, key, meaning);
+        } catch (IOException e) {
+            HashMap<String, String> response = new HashMap<>();
+            response.put("code", "ERROR");
+            response.put("msg", "Server error in writing Dictionary file");
+            e.printStackTrace();
+            return response;
+        }
+        return null;
+    }
+
+
+    /**
+     * Appends a change to the data file, publishes the new version of the index and caches the new
+     * meaning. Called while holding this dictionary's lock.
+     *
+     * @throws IOException if the data file cannot be written; the change is not published then
+     */
+    private void append(String action, String key, String meaning) throws IOException {
+        appendAll(Collections.singletonList(new String[]{action, key, meaning}));
+        if (meaning != null) {
+            cache.put(key, new Cached(version, meaning));
+        }
+        publish(action, key, meaning);
+        compactIfWasteful();
+    }
+
+
+    /**
+     * Appends changes to the data file and publishes them as a single new version of the index. Called
+     * while holding this dictionary's lock; the listeners are not notified.
+     *
+     * @param changes the action, word and new meaning, or null to delete the word, of every change
+     * @throws IOException if the data file cannot be written; none of the changes is published then
+     */
+    private void appendAll(List<String[]> changes) throws IOException {
+        Segment current = segment;
+        if (!current.channel().isOpen()) {
+            reopen(current.channel());
+            current = segment;
+        }
+        PersistentHashMap<String, Location> index = current.index();
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(1 << 16);
+        long written = fileSize;
+        long position = fileSize;
+        long live = liveBytes;
+        long nextVersion = version;
+        try {
+            for (String[] change : changes) {
+                String key = change[1];
+                byte[] value = change[2] == null ? null : change[2].getBytes(StandardCharsets.UTF_8);
+                byte[] record = record(key, value);
+                batch.write(record);
+                Location previous = index.get(key);
+                if (previous != null) {
+                    live -= recordSize(key, previous);
+                }
+                if (value == null) {
+                    index = index.minus(key);
+                } else {
+                    index = index.plus(key, new Location(position + record.length - value.length, value.length,
+                                                         ++nextVersion));
+                    live += record.length;
+                }
+                position += record.length;
+                if (batch.size() >= 1 << 16) {
+                    writeFully(current.channel(), batch.toByteArray(), written);
+                    written += batch.size();
+                    batch.reset();
+                }
+            }
+            writeFully(current.channel(), batch.toByteArray(), written);
+        } catch (IOException e) {
+            // Records left beyond the end of the file would be picked up when it is opened again
+            try {
+                current.channel().truncate(fileSize);
+            } catch (IOException ignored) {
+                // The channel is broken, the next write reopens the file
+            }
+            throw e;
+        }
+
+        for (String[] change : changes) {
+            if (change[2] == null) {
+                cache.remove(change[1]);
+            }
+        }
+        fileSize = position;
+        liveBytes = live;
+        version = nextVersion;
+        segment = new Segment(current.channel(), index);
+    }
+
+
+    /**
+     * Updates the sorted index and notifies the listeners of a change. Called while holding this
+     * dictionary's lock, after the new version has been published.
+     */
+    private void publish(String action, String key, String meaning) {
+        if (meaning == null) {
+            sortedIndex.remove(key);
+        } else {
+            sortedIndex.add(key);
+        }
+        for (MutationListener listener : listeners) {
+            listener.onMutation(action, key, meaning);
+        }
+    }
+
+
+    /**
+     * Replaces a data file channel that was closed, e.g. because a reading thread was interrupted.
+     */
+    private synchronized void reopen(FileChannel closed) throws IOException {
+        Segment current = segment;
+        if (current.channel() == closed && !closed.isOpen()) {
+            FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segment = new Segment(channel, current.index());
+        }
+    }
+
+
+    /**
+     * Starts compacting the data file in the background once more than half of it holds replaced meanings.
+     * Called while holding this dictionary's lock.
+     */
+    private void compactIfWasteful() {
+        if (fileSize < MIN_COMPACTION_BYTES || fileSize - liveBytes < liveBytes || closed
+                || compaction != null && compaction.isAlive()) {
+            return;
+        }
+        compaction = new Thread(this::compactInBackground, "compaction-" + dataPath.getFileName());
+        compaction.setDaemon(true);
+        compaction.start();
+    }
+
+
+    /**
+     * Compacts the data file. A failed compaction leaves the current file in use.
+     */
+    private void compactInBackground() {
+        Path temp = dataPath.resolveSibling(dataPath.getFileName() + ".compact");
+        try {
+            compact(temp);
+        } catch (IOException e) {
+            ServerLog.info("Could not compact " + dataPath.getFileName() + ": " + e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // A leftover file is overwritten by the next compaction
+            }
+        }
+    }
+
+
+    /**
+     * Copies the live records into a new data file and switches to it. The bulk of the records is copied
+     * without the lock, so writers keep appending to the old file meanwhile; the records they appended are
+     * copied under the lock before switching. Meanings keep their versions, so cached meanings stay valid.
+     * Readers still using the old file can finish, as it is only closed by the next compaction. Gives up
+     * without switching if the dictionary is closed meanwhile.
+     */
+    private void compact(Path temp) throws IOException {
+        Segment frozen = segment;
+        FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                               StandardOpenOption.READ, StandardOpenOption.WRITE);
+        HashMap<String, Location> relocated = new HashMap<>();
+        FileChannel previouslyRetired;
+        try {
+            // The stream must not be closed, that would close the channel that is kept
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            long position = 0;
+            for (Map.Entry<String, Location> entry : frozen.index().entrySet()) {
+                if (closed) {
+                    channel.close();
+                    return;
+                }
+                position = copy(frozen.channel(), entry.getKey(), entry.getValue(), out, relocated, position);
+            }
+
+            synchronized (this) {
+                if (closed) {
+                    channel.close();
+                    return;
+                }
+                // Copy what was written meanwhile and leave out what was deleted
+                Segment current = segment;
+                long replaced = 0;
+                for (Map.Entry<String, Location> entry : current.index().entrySet()) {
+                    if (!entry.getValue().equals(frozen.index().get(entry.getKey()))) {
+                        Location stale = relocated.get(entry.getKey());
+                        if (stale != null) {
+                            replaced += recordSize(entry.getKey(), stale);
+                        }
+                        position = copy(current.channel(), entry.getKey(), entry.getValue(), out, relocated, position);
+                    }
+                }
+                for (String key : frozen.index().keySet()) {
+                    if (!current.index().containsKey(key)) {
+                        replaced += recordSize(key, relocated.remove(key));
+                    }
+                }
+                out.flush();
+                channel.force(false);
+                Files.move(temp, dataPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+                previouslyRetired = retired;
+                retired = current.channel();
+                segment = new Segment(channel, PersistentHashMap.of(relocated));
+                fileSize = position;
+                liveBytes = position - replaced;
+                compactions.increment();
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (previouslyRetired != null) {
+            previouslyRetired.close();
+        }
+    }
+
+
+    /**
+     * Copies the record of a word into a compacted data file.
+     *
+     * @return the position after the record
+     */
+    private static long copy(FileChannel from, String key, Location location, OutputStream out,
+                             Map<String, Location> relocated, long position) throws IOException {
+        byte[] value = new byte[location.length()];
+        readFully(from, value, location.offset());
+        byte[] record = record(key, value);
+        out.write(record);
+        relocated.put(key, new Location(position + record.length - value.length, value.length, location.version()));
+        return position + record.length;
+    }
+
+
+    /**
+     * Writes the words of the JSON dictionary file into a new data file.
+     */
+    private void seed(HashMap<String, String> entries) throws IOException {
+        Path temp = dataPath.resolveSibling(dataPath.getFileName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16)) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                out.write(record(entry.getKey(), entry.getValue().getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        Files.move(temp, dataPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+
+    /**
+     * Reads all records of the data file to build the index. The file is cut off at the first record that
+     * is incomplete or does not match its checksum.
+     */
+    private PersistentHashMap<String, Location> recover(FileChannel channel) throws IOException {
+        HashMap<String, Location> index = new HashMap<>();
+        long position = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(dataPath), 1 << 16))) {
+            while (true) {
+                int checksum = in.readInt();
+                int keyLength = in.readInt();
+                int valueLength = in.readInt();
+                if (keyLength < 0 || valueLength < -1 || (long) keyLength + valueLength > channel.size() - position) {
+                    break;
+                }
+                byte[] body = new byte[8 + keyLength + Math.max(0, valueLength)];
+                ByteBuffer.wrap(body).putInt(keyLength).putInt(valueLength);
+                in.readFully(body, 8, body.length - 8);
+                CRC32C crc = new CRC32C();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                String key = new String(body, 8, keyLength, StandardCharsets.UTF_8);
+                long recordSize = HEADER + keyLength + Math.max(0, valueLength);
+                Location previous = valueLength < 0 ? index.remove(key)
+                        : index.put(key, new Location(position + HEADER + keyLength, valueLength, ++version));
+                if (previous != null) {
+                    liveBytes -= recordSize(key, previous);
+                }
+                if (valueLength >= 0) {
+                    liveBytes += recordSize;
+                }
+                position += recordSize;
+            }
+        } catch (EOFException e) {
+            // The last record is incomplete
+        }
+        if (position < channel.size()) {
+            ServerLog.info("Discarding " + (channel.size() - position) + " damaged bytes at the end of " + dataPath);
+            channel.truncate(position);
+        }
+        fileSize = position;
+        return PersistentHashMap.of(index);
+    }
+
+
+    /**
+     * Encodes a record: a CRC32C checksum of the rest of the record, the word's length, the meaning's
+     * length or -1 for a deleted word, the word and the meaning.
+     */
+    private static byte[] record(String key, byte[] value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER + keyBytes.length + (value == null ? 0 : value.length));
+        buffer.putInt(0).putInt(keyBytes.length).putInt(value == null ? -1 : value.length).put(keyBytes);
+        if (value != null) {
+            buffer.put(value);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 4, buffer.capacity() - 4);
+        buffer.putInt(0, (int) crc.getValue());
+        return buffer.array();
+    }
+
+
+    private static long recordSize(String key, Location location) {
+        return HEADER + key.getBytes(StandardCharsets.UTF_8).length + location.length();
+    }
+
+
+    private static void readFully(FileChannel channel, byte[] bytes, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Data file ends before the meaning");
+            }
+        }
+    }
+
+
+    private static void writeFully(FileChannel channel, byte[] bytes, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * Records are written to the data file as they are made but left to the operating system to store; this
+     * waits for a running compaction to give up and forces them to the disk. A later read opens the file again.
+     */
+    @Override
+    public void close() {
+        Thread running;
+        synchronized (this) {
+            closed = true;
+            running = compaction;
+        }
+        if (running != null) {
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        closeFiles();
+    }
+
+
+    private synchronized void closeFiles() {
+        try {
+            segment.channel().force(true);
+            segment.channel().close();
+            if (retired != null) {
+                retired.close();
+                retired = null;
+            }
+        } catch (IOException e) {
+            ServerLog.info("Could not store " + dataPath.getFileName() + " on shutdown: " + e.getMessage());
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "TieredDictionary{" +
+                "dataPath=" + dataPath +
+                ", words=" + segment.index().size() +
+                ", cache=" + cache +
+                '}';
+    }
+}
@@ -0,0 +1,89 @@
+package com.zzh.server.pool;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * A pool of equally sized direct {@link ByteBuffer}s used for socket I/O. Direct buffers are written to
+ * and read from the socket without the extra copy a heap buffer needs, but they are expensive to allocate,
+ * so connections borrow them from this pool and give them back when done. The pool grows to the peak
+ * number of buffers in use. A connection holds its two buffers (more while writing a large response) while
+ * a worker serves it and while its request waits in a READ or MUTATE lane, and gives them back while it
+ * waits for its next request in the {@link KeepAliveWatcher}; a SUBSCRIBE connection holds them until it
+ * ends. So about two buffers are in use per worker, per request queued in a lane and per subscriber.
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final LongAdder allocated = new LongAdder();
+
+
+    /**
+     * Constructs an empty BufferPool.
+     *
+     * @param bufferSize the capacity of every buffer in bytes
+     */
+    public BufferPool(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+
+    /**
+     * Takes a cleared buffer from the pool, allocating a new one if the pool is empty.
+     *
+     * @return a direct buffer of {@link #getBufferSize()} bytes
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            allocated.increment();
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+        return buffer;
+    }
+
+
+    /**
+     * Gives a buffer back to the pool. Buffers not taken from a pool of this size are ignored.
+     *
+     * @param buffer the buffer, which must not be used afterwards
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.isDirect() && buffer.capacity() == bufferSize) {
+            buffer.clear();
+            buffers.offer(buffer);
+        }
+    }
+
+
+    /**
+     * @return the capacity of the pooled buffers in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+
+    /**
+     * @return the number of buffers allocated since the pool was created
+     */
+    public long getAllocated() {
+        return allocated.sum();
+    }
+
+
+    @Override
+    public String toString() {
+        return "BufferPool{" +
+                "bufferSize=" + bufferSize +
+                ", allocated=" + allocated.sum() +
+                '}';
+    }
+}
@@ -1,59 +1,162 @@
 package com.zzh.server.pool;
 
-import com.zzh.server.ServerGUI;
+import com.zzh.server.ServerConfig;
+import com.zzh.server.ServerMetrics;
 
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.SocketChannel;
+import java.util.Locale;
 
 
 /**
  * A simple implementation of thread pool for managing a fixed number of worker threads
- * to handle incoming client requests. It uses a blocking queue to manage tasks,
- * ensuring that no more than a specified number of clients are queued at any time.
+ * to handle incoming client requests. Tasks wait in the lanes of a {@link LaneScheduler}:
+ * new connections in the INTAKE lane, which holds no more than a specified number of clients,
+ * and parsed requests in the READ or MUTATE lane, so a burst of slow writes cannot hold up reads.
+ * Kept-alive connections wait for their next request in a {@link KeepAliveWatcher}, not on a worker, and
+ * return to the INTAKE lane once it arrives. The pool is shut down by draining: queued work is finished
+ * before the workers stop.
  *
  * <p>
  * Created by Zhonghe Zheng, Student ID: 825612.
  * </p>
  */
 public class DicPool {
-    private final BlockingQueue<Runnable> boundedBlockingQueue;
+    private final LaneScheduler scheduler;
     private final WorkerThread[] workers;
-    private final ServerGUI serverGUI;
+    private final KeepAliveWatcher keepAliveWatcher;
+    private volatile boolean shutdown;
 
 
     /**
      * Constructs a DicPool with the specified number of worker threads and maximum client queue size.
-     * Initializes the worker threads and starts them immediately.
+     * Lane capacities, weights and the number of workers reserved for reads are read from the
+     * {@link ServerConfig}. Initializes the worker threads and starts them immediately.
      *
      * @param numberOfThreads   the number of worker threads in the pool
      * @param maxClientsInQueue the maximum number of clients that can be queued
-     * @param serverGUI         the ServerGUI instance for logging and display purposes
      */
-    public DicPool(int numberOfThreads, int maxClientsInQueue, ServerGUI serverGUI) {
-        this.boundedBlockingQueue = new ArrayBlockingQueue<>(maxClientsInQueue);
+    public DicPool(int numberOfThreads, int maxClientsInQueue) {
+        int[] capacities = {maxClientsInQueue, ServerConfig.laneCapacity(), ServerConfig.laneCapacity()};
+        int[] weights = {ServerConfig.intakeWeight(), ServerConfig.readWeight(), ServerConfig.mutateWeight()};
+        // At least one worker must stay unreserved so writes can run
+        int readWorkers = Math.min(ServerConfig.reservedReadWorkers(), numberOfThreads - 1);
+        this.scheduler = new LaneScheduler(capacities, weights, numberOfThreads - readWorkers);
         this.workers = new WorkerThread[numberOfThreads];
-        this.serverGUI = serverGUI;
 
         for (int i = 0; i < numberOfThreads; i++) {
-            workers[i] = new WorkerThread(boundedBlockingQueue, i, serverGUI);
+            workers[i] = new WorkerThread(scheduler, i);
             workers[i].start();
         }
+        try {
+            this.keepAliveWatcher = new KeepAliveWatcher(scheduler::resume);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the keep-alive selector", e);
+        }
+        keepAliveWatcher.start();
+        for (Lane lane : Lane.values()) {
+            ServerMetrics.gauge("lane." + lane.name().toLowerCase(Locale.ROOT) + ".queued", () -> scheduler.size(lane));
+        }
     }
 
 
     /**
-     * Submits a new task to the thread pool. If the task queue is full, an IllegalStateException
+     * Submits a new task to the INTAKE lane of the thread pool. If the lane is full, an IllegalStateException
      * is thrown to reject the new task.
      *
      * @param socketRunner the task to be executed, typically a Runnable handling a client socket
-     * @throws IllegalStateException if the queue is full and the task cannot be accepted
+     * @throws IllegalStateException if the queue is full or the pool is shutting down, and the task cannot be accepted
      */
     public void execute(Runnable socketRunner) throws IllegalStateException {
-        //Main Thread Blocked until there is space in the blockingQueue
-        //When lots of client request, the OS's accept queue might be overwhelmed and client side will fail to connect
-        //boundedBlockingQueue.put(socketRunner); (not used)
+        //When lots of client request, the OS's accept queue might be overwhelmed and client side will fail to connect,
+        //so new Socket connections exceeding the queue size are rejected instead of blocking the accept loop
+        if (shutdown || !scheduler.offer(Lane.INTAKE, socketRunner)) { //Producer
+            throw new IllegalStateException("Queue full");
+        }
+    }
+
 
-        //New Socket connections exceeding the blockingQueue size will throw runtime IllegalStateException Error(aka rejected)
-        boundedBlockingQueue.add(socketRunner); //Producer
+    /**
+     * Stops the pool after the queued work is done. Connections already taken on are answered, but kept
+     * alive no longer. Waits for the workers to stop until the timeout; work still running after it is left
+     * to finish on its own.
+     *
+     * @param timeoutMillis the longest time to wait for the workers
+     * @return true if every worker has stopped
+     */
+    public boolean shutdown(long timeoutMillis) {
+        // Idle connections are resumed before the scheduler closes, so their tasks are drained too
+        shutdown = true;
+        keepAliveWatcher.close();
+        scheduler.close();
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        try {
+            for (WorkerThread worker : workers) {
+                long waitMillis = (deadline - System.nanoTime()) / 1_000_000;
+                if (waitMillis > 0) {
+                    worker.join(waitMillis);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (WorkerThread worker : workers) {
+            if (worker.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * @return true if the pool is shutting down or has shut down
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+
+    /**
+     * Queues a kept-alive connection in the INTAKE lane once its next request starts arriving or its keep-alive
+     * timeout has passed. Until then it occupies no worker.
+     *
+     * @param channel       the connection
+     * @param task          the connection's task
+     * @param timeoutMillis the keep-alive timeout
+     */
+    public void resumeWhenReadable(SocketChannel channel, Runnable task, long timeoutMillis) {
+        keepAliveWatcher.watch(channel, task, timeoutMillis);
+    }
+
+
+    /**
+     * Frees the write slot held by the current task if it came from the MUTATE lane. Called once the write
+     * has been answered, so the rest of the task does not keep other writes waiting.
+     */
+    public void releaseMutation() {
+        scheduler.releaseMutation();
+    }
+
+
+    /**
+     * @param lane the lane
+     * @return the number of tasks waiting in the lane
+     */
+    public int queued(Lane lane) {
+        return scheduler.size(lane);
+    }
+
+
+    /**
+     * Submits a task to a lane without blocking.
+     *
+     * @param lane the lane matching the kind of work
+     * @param task the task to be executed
+     * @return false if the lane is full and the task was not accepted
+     */
+    public boolean submit(Lane lane, Runnable task) {
+        return scheduler.offer(lane, task);
     }
 }
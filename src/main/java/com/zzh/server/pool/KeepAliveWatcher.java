@@ -0,0 +1,172 @@
+package com.zzh.server.pool;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+
+/**
+ * The KeepAliveWatcher class waits for the next request of kept-alive connections on one thread, so idle
+ * connections do not occupy pool workers. Every watched connection is registered with a shared selector;
+ * once it becomes readable, or its keep-alive timeout has passed, its task is resumed in the INTAKE lane,
+ * where it reads the request or finds out it timed out.
+ *
+ * <p>
+ * Timeouts are checked every {@value #EXPIRY_CHECK_MILLIS} ms. Once closed, every watched connection is
+ * resumed straight away, so it can be closed by its task.
+ * </p>
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+class KeepAliveWatcher extends Thread {
+    private static final long EXPIRY_CHECK_MILLIS = 100;
+    private final Selector selector;
+    private final Consumer<Runnable> resume;
+    private final Queue<Watch> pending = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+
+    /**
+     * A watched connection and the task to resume.
+     */
+    private record Watch(SocketChannel channel, Runnable task, long deadline) {
+    }
+
+
+    /**
+     * Constructs a KeepAliveWatcher.
+     *
+     * @param resume queues the task of a connection that has a request or timed out
+     * @throws IOException if the selector cannot be opened
+     */
+    KeepAliveWatcher(Consumer<Runnable> resume) throws IOException {
+        super("keep-alive-watcher");
+        this.selector = Selector.open();
+        this.resume = resume;
+        setDaemon(true);
+    }
+
+
+    /**
+     * Watches a connection for its next request.
+     *
+     * @param channel       the non-blocking connection
+     * @param task          the task to resume when the connection is readable or has timed out
+     * @param timeoutMillis the keep-alive timeout
+     */
+    void watch(SocketChannel channel, Runnable task, long timeoutMillis) {
+        pending.add(new Watch(channel, task, System.nanoTime() + timeoutMillis * 1_000_000));
+        // Checked after adding, so a connection added while the watcher stops is still resumed
+        if (closed) {
+            resumePending();
+        } else {
+            selector.wakeup();
+        }
+    }
+
+
+    /**
+     * Stops watching and resumes every watched connection. Returns once they all have been resumed.
+     */
+    void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Registers the connections to watch, resumes the ones that became readable, and every
+     * {@value #EXPIRY_CHECK_MILLIS} ms the ones whose timeout has passed.
+     */
+    @Override
+    public void run() {
+        List<Watch> retries = new ArrayList<>();
+        long nextExpiryCheck = System.nanoTime();
+        try {
+            while (!closed) {
+                for (Watch watch; (watch = pending.poll()) != null; ) {
+                    try {
+                        watch.channel().register(selector, SelectionKey.OP_READ, watch);
+                    } catch (CancelledKeyException e) {
+                        retries.add(watch); // Its previous key leaves the selector with the next select
+                    } catch (ClosedChannelException e) {
+                        resume.accept(watch.task()); // The task finds the connection closed
+                    }
+                }
+                if (retries.isEmpty()) {
+                    selector.select(EXPIRY_CHECK_MILLIS);
+                } else {
+                    selector.selectNow();
+                    pending.addAll(retries);
+                    retries.clear();
+                }
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    resume(key);
+                }
+                selector.selectedKeys().clear();
+
+                long now = System.nanoTime();
+                if (now - nextExpiryCheck >= 0) {
+                    nextExpiryCheck = now + EXPIRY_CHECK_MILLIS * 1_000_000;
+                    for (SelectionKey key : selector.keys()) {
+                        if (key.isValid() && now - ((Watch) key.attachment()).deadline() >= 0) {
+                            resume(key);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.isValid()) {
+                    resume(key);
+                }
+            }
+            resumePending();
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+
+    private void resume(SelectionKey key) {
+        key.cancel();
+        resume.accept(((Watch) key.attachment()).task());
+    }
+
+
+    private void resumePending() {
+        for (Watch watch; (watch = pending.poll()) != null; ) {
+            resume.accept(watch.task());
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "KeepAliveWatcher{" +
+                "watched=" + selector.keys().size() +
+                ", closed=" + closed +
+                '}';
+    }
+}
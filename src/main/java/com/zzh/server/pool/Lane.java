@@ -0,0 +1,25 @@
+package com.zzh.server.pool;
+
+
+/**
+ * The lanes of the {@link DicPool} scheduler. Each lane has its own queue, so a burst of one kind of work
+ * cannot delay the others beyond their share of the workers.
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public enum Lane {
+    /**
+     * Newly accepted connections and kept-alive connections waiting for their next request.
+     */
+    INTAKE,
+    /**
+     * Requests that only read the dictionary, e.g. READ, LIST, SCAN and STATS.
+     */
+    READ,
+    /**
+     * Requests that change the dictionary and rewrite its file.
+     */
+    MUTATE
+}
@@ -0,0 +1,252 @@
+package com.zzh.server.pool;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * The LaneScheduler class holds one bounded FIFO queue per {@link Lane} and decides which lane a worker
+ * serves next. Lanes with waiting tasks are picked by smooth weighted round robin: every pick adds each
+ * candidate lane's weight to its credit, takes the lane with the most credit and charges it the total
+ * weight. Over time each busy lane gets its weighted share, without long runs of one lane.
+ *
+ * <p>
+ * Workers may be reserved for reads: the MUTATE lane is only picked while fewer than the remaining workers
+ * run writes. Writes mostly wait for the dictionary lock anyway, so the reserved workers stay free for
+ * reads and new connections during a write burst. A write holds its slot until its response is sent, not
+ * until its connection's task ends.
+ * </p>
+ *
+ * <p>
+ * Once closed, the scheduler still hands out the tasks already queued and accepts the requests of connections
+ * being drained, but a worker asking for a task when all lanes are empty is told to stop.
+ * </p>
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+class LaneScheduler {
+    private static final Lane[] lanes = Lane.values();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition taskAvailable = lock.newCondition();
+    private final List<ArrayDeque<Runnable>> queues = new ArrayList<>();
+    private final ThreadLocal<Mutation> runningMutation = new ThreadLocal<>();
+    private final int[] capacities;
+    private final int[] weights;
+    private final int[] credits = new int[lanes.length];
+    private final int maxMutations;
+    private int runningMutations;
+    private int size;
+    private boolean closed;
+
+
+    /**
+     * Constructs a LaneScheduler.
+     *
+     * @param capacities   the maximum number of queued tasks per lane, indexed by {@link Lane#ordinal()}
+     * @param weights      the share of picks per lane, indexed by {@link Lane#ordinal()}
+     * @param maxMutations the maximum number of MUTATE tasks running at once
+     */
+    LaneScheduler(int[] capacities, int[] weights, int maxMutations) {
+        this.capacities = capacities.clone();
+        this.weights = weights.clone();
+        this.maxMutations = maxMutations;
+        for (int i = 0; i < lanes.length; i++) {
+            queues.add(new ArrayDeque<>());
+        }
+    }
+
+
+    /**
+     * Queues a task in a lane.
+     *
+     * @param lane the lane
+     * @param task the task
+     * @return false if the lane is full and the task was not queued
+     */
+    boolean offer(Lane lane, Runnable task) {
+        return add(lane, task, true);
+    }
+
+
+    /**
+     * Queues a kept-alive connection in the INTAKE lane, even if the lane is full. The connection was admitted
+     * already, so it is only bounded by the number of open connections.
+     *
+     * @param task the connection's task
+     */
+    void resume(Runnable task) {
+        add(Lane.INTAKE, task, false);
+    }
+
+
+    private boolean add(Lane lane, Runnable task, boolean bounded) {
+        lock.lock();
+        try {
+            ArrayDeque<Runnable> queue = queues.get(lane.ordinal());
+            if (bounded && queue.size() >= capacities[lane.ordinal()]) {
+                return false;
+            }
+            queue.addLast(task);
+            size++;
+            taskAvailable.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Waits for the next task a worker should run.
+     *
+     * @return the task, or null if the scheduler is closed and no task is left
+     * @throws InterruptedException if the worker was interrupted while waiting
+     */
+    Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                Lane lane = pickLane();
+                if (lane == Lane.MUTATE) {
+                    size--;
+                    runningMutations++;
+                    return new Mutation(queues.get(lane.ordinal()).pollFirst());
+                }
+                if (lane != null) {
+                    size--;
+                    return queues.get(lane.ordinal()).pollFirst();
+                }
+                if (closed && size == 0) {
+                    return null;
+                }
+                taskAvailable.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Closes the scheduler, so workers stop once the queued tasks are done.
+     */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            taskAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Frees the write slot held by the MUTATE task running in the current thread, so the next write can start
+     * while the task goes on with other work. Does nothing if the thread holds no slot.
+     */
+    void releaseMutation() {
+        Mutation mutation = runningMutation.get();
+        if (mutation != null) {
+            mutation.release();
+        }
+    }
+
+
+    /**
+     * A task taken from the MUTATE lane, holding a write slot until it releases it or ends.
+     */
+    private final class Mutation implements Runnable {
+        private final Runnable task;
+        private boolean holding = true;
+
+        private Mutation(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            runningMutation.set(this);
+            try {
+                task.run();
+            } finally {
+                runningMutation.remove();
+                release();
+            }
+        }
+
+        private void release() {
+            if (holding) {
+                holding = false;
+                lock.lock();
+                try {
+                    runningMutations--;
+                    taskAvailable.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+
+    private Lane pickLane() {
+        Lane best = null;
+        int totalWeight = 0;
+        for (Lane lane : lanes) {
+            int i = lane.ordinal();
+            if (queues.get(i).isEmpty() || (lane == Lane.MUTATE && runningMutations >= maxMutations)) {
+                continue;
+            }
+            credits[i] += weights[i];
+            totalWeight += weights[i];
+            if (best == null || credits[i] > credits[best.ordinal()]) {
+                best = lane;
+            }
+        }
+        if (best != null) {
+            credits[best.ordinal()] -= totalWeight;
+        }
+        return best;
+    }
+
+
+    /**
+     * @param lane the lane
+     * @return the number of tasks waiting in the lane
+     */
+    int size(Lane lane) {
+        lock.lock();
+        try {
+            return queues.get(lane.ordinal()).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * @return the number of tasks waiting in all lanes
+     */
+    int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "LaneScheduler{" +
+                "queued=" + size() +
+                '}';
+    }
+}
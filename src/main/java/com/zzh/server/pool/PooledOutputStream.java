@@ -0,0 +1,131 @@
+package com.zzh.server.pool;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+/**
+ * An OutputStream collecting the bytes of one response in buffers taken from a {@link BufferPool}.
+ * A response larger than one buffer continues in further buffers, and {@link #flip()} hands all of them
+ * to a single gathering write. The stream is reused for every response of a connection, so writing a
+ * response allocates nothing once the connection is warmed up.
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class PooledOutputStream extends OutputStream {
+    private final BufferPool bufferPool;
+    private ByteBuffer[] buffers = new ByteBuffer[4];
+    private int count;
+
+
+    /**
+     * Constructs a PooledOutputStream holding one buffer of the pool.
+     *
+     * @param bufferPool the pool supplying the buffers
+     */
+    public PooledOutputStream(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+        this.buffers[0] = bufferPool.acquire();
+        this.count = 1;
+    }
+
+
+    @Override
+    public void write(int b) {
+        current().put((byte) b);
+    }
+
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            ByteBuffer buffer = current();
+            int chunk = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+
+    /**
+     * Prepares the written bytes for a gathering write.
+     *
+     * @return the buffers holding the response, read from index 0 up to {@link #getCount()}
+     */
+    public ByteBuffer[] flip() {
+        for (int i = 0; i < count; i++) {
+            buffers[i].flip();
+        }
+        return buffers;
+    }
+
+
+    /**
+     * @return the number of buffers holding the response
+     */
+    public int getCount() {
+        return count;
+    }
+
+
+    /**
+     * Empties the stream for the next response. Buffers needed only by a large response go back to the pool.
+     */
+    public void reset() {
+        for (int i = 1; i < count; i++) {
+            bufferPool.release(buffers[i]);
+            buffers[i] = null;
+        }
+        if (count > 0) {
+            buffers[0].clear();
+            count = 1;
+        }
+    }
+
+
+    /**
+     * Gives all buffers back to the pool while the stream holds no response, e.g. while its connection is
+     * idle. The next write takes a buffer from the pool again.
+     */
+    public void release() {
+        for (int i = 0; i < count; i++) {
+            bufferPool.release(buffers[i]);
+            buffers[i] = null;
+        }
+        count = 0;
+    }
+
+
+    /**
+     * Gives all buffers back to the pool. The stream must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        release();
+    }
+
+
+    private ByteBuffer current() {
+        if (count > 0 && buffers[count - 1].hasRemaining()) {
+            return buffers[count - 1];
+        }
+        if (count == buffers.length) {
+            buffers = Arrays.copyOf(buffers, count * 2);
+        }
+        ByteBuffer buffer = bufferPool.acquire();
+        buffers[count++] = buffer;
+        return buffer;
+    }
+
+
+    @Override
+    public String toString() {
+        return "PooledOutputStream{" +
+                "buffers=" + count +
+                '}';
+    }
+}
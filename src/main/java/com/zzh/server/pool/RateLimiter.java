@@ -0,0 +1,192 @@
+package com.zzh.server.pool;
+
+import com.zzh.server.ServerMetrics;
+
+import java.net.InetAddress;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The RateLimiter class gives every client address a token bucket per {@link Lane}, so a client sending
+ * more connections, reads or writes than its share is turned away before its work is queued, and cannot
+ * fill the queues other clients depend on. Each lane has its own rate; a rate of 0 leaves the lane unlimited.
+ *
+ * <p>
+ * A bucket is a single number, the time at which it will be full again: taking a token moves that time
+ * one interval further, and a token is refused if that would put it more than the burst ahead of now.
+ * Buckets are updated with compare-and-set, so clients never wait for a lock. A full bucket is the same as
+ * a new one, so clients whose buckets are all full are forgotten to make room once the limit of known clients
+ * is reached; their buckets are retired with compare-and-set first, so no token taken meanwhile is lost. While every known client is busy, work from new addresses is refused, so a flood of addresses
+ * cannot grow the table beyond the limit.
+ * </p>
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class RateLimiter {
+    private static final long SECOND_NANOS = 1_000_000_000L;
+    // Marks the buckets of a client being forgotten, see retire()
+    private static final long RETIRED = Long.MIN_VALUE;
+    private final long[] intervals = new long[Lane.values().length];
+    private final long[] bursts = new long[Lane.values().length];
+    private final LongAdder[] throttled = new LongAdder[Lane.values().length];
+    private final int maxClients;
+    private final Map<InetAddress, AtomicLongArray> clients = new ConcurrentHashMap<>();
+    private final AtomicInteger known = new AtomicInteger();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+
+
+    /**
+     * Constructs a RateLimiter.
+     *
+     * @param ratesPerSecond the tokens each client gets per second in every lane, indexed by lane ordinal;
+     *                       0 for no limit
+     * @param burstSeconds   the seconds' worth of tokens a client may use at once after being idle
+     * @param maxClients     the largest number of clients known at once
+     */
+    public RateLimiter(double[] ratesPerSecond, double burstSeconds, int maxClients) {
+        this.maxClients = maxClients;
+        for (Lane lane : Lane.values()) {
+            int i = lane.ordinal();
+            if (ratesPerSecond[i] > 0) {
+                intervals[i] = Math.max(1, Math.round(SECOND_NANOS / ratesPerSecond[i]));
+                bursts[i] = intervals[i] * Math.max(1, Math.round(ratesPerSecond[i] * burstSeconds));
+            }
+            throttled[i] = ServerMetrics.counter("throttle." + lane.name().toLowerCase(Locale.ROOT));
+        }
+        ServerMetrics.gauge("throttle.clients", clients::size);
+    }
+
+
+    /**
+     * Takes a token from a client's bucket for the lane.
+     *
+     * @param client the client's address
+     * @param lane   the lane the client's work goes to
+     * @return false if the client is over its rate and the work must be refused
+     */
+    public boolean tryAcquire(InetAddress client, Lane lane) {
+        int i = lane.ordinal();
+        long interval = intervals[i];
+        if (interval == 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        AtomicLongArray buckets = clients.get(client);
+        while (true) {
+            if (buckets == null) {
+                buckets = admit(client, now);
+                if (buckets == null) {
+                    throttled[i].increment();
+                    return false;
+                }
+            }
+            long fullAt = buckets.get(i);
+            if (fullAt == RETIRED) {
+                // A sweep is forgetting the client: wait until it has either kept or removed the buckets
+                AtomicLongArray current = clients.get(client);
+                if (current == buckets) {
+                    Thread.onSpinWait();
+                }
+                buckets = current;
+                continue;
+            }
+            long next = (fullAt - now > 0 ? fullAt : now) + interval;
+            if (next - now > bursts[i]) {
+                throttled[i].increment();
+                return false;
+            }
+            if (buckets.compareAndSet(i, fullAt, next)) {
+                return true;
+            }
+        }
+    }
+
+
+    /**
+     * Starts tracking a new client, unless the limit of known clients is reached and no idle client can be
+     * forgotten.
+     *
+     * @return the client's buckets, or null if the client is refused
+     */
+    private AtomicLongArray admit(InetAddress client, long now) {
+        if (known.get() >= maxClients) {
+            sweep(now);
+        }
+        if (known.incrementAndGet() > maxClients) {
+            known.decrementAndGet();
+            return null;
+        }
+        AtomicLongArray created = full(now);
+        AtomicLongArray buckets = clients.putIfAbsent(client, created);
+        if (buckets != null) {
+            known.decrementAndGet(); // Another thread added the client first
+            return buckets;
+        }
+        return created;
+    }
+
+
+    /**
+     * Forgets the clients whose buckets are all full. Runs at most once a second, so a flood of new
+     * addresses does not turn every lookup into a scan.
+     */
+    private void sweep(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + SECOND_NANOS)) {
+            return;
+        }
+        for (Map.Entry<InetAddress, AtomicLongArray> client : clients.entrySet()) {
+            if (retire(client.getValue(), now) && clients.remove(client.getKey(), client.getValue())) {
+                known.decrementAndGet();
+            }
+        }
+    }
+
+
+    /**
+     * Marks every bucket of a client as retired if all of them are full. Each bucket is retired with
+     * compare-and-set, so a token taken at the same time either keeps the client, or finds the bucket
+     * retired and is taken from the client's new buckets instead; it is never lost with the old ones.
+     *
+     * @return true if the buckets were retired and must be removed, false if the client stays
+     */
+    private static boolean retire(AtomicLongArray buckets, long now) {
+        for (int i = 0; i < buckets.length(); i++) {
+            long fullAt = buckets.get(i);
+            if (fullAt - now > 0 || !buckets.compareAndSet(i, fullAt, RETIRED)) {
+                // The client is busy: the buckets retired so far were full, which is what now means
+                for (int j = 0; j < i; j++) {
+                    buckets.set(j, now);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static AtomicLongArray full(long now) {
+        AtomicLongArray buckets = new AtomicLongArray(Lane.values().length);
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, now);
+        }
+        return buckets;
+    }
+
+
+    @Override
+    public String toString() {
+        return "RateLimiter{" +
+                "clients=" + clients.size() +
+                ", maxClients=" + maxClients +
+                '}';
+    }
+}
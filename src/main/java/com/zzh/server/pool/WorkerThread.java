@@ -1,44 +1,39 @@
 package com.zzh.server.pool;
 
-import com.zzh.server.ServerGUI;
-
-import javax.swing.*;
-import java.util.concurrent.BlockingQueue;
+import com.zzh.server.ServerLog;
 
 
 /**
  * The WorkerThread class represents a worker thread in the thread pool. It continuously
- * listens for tasks from a blocking queue and executes them. The tasks are typically
- * instances of Runnable that handle client connections.
+ * takes tasks from the lane scheduler and executes them, until the scheduler is closed and
+ * has no task left. The tasks are typically instances of Runnable that handle client connections.
  *
  * <p>
  * Created by Zhonghe Zheng, Student ID: 825612.
  * </p>
  */
 class WorkerThread extends Thread {
-    private final BlockingQueue<Runnable> boundedBlockingQueue;
+    private final LaneScheduler scheduler;
     private int workerNum;
-    private ServerGUI serverGUI;
     private boolean firstRun = true;
 
 
     /**
-     * Constructs a WorkerThread with the specified task queue, worker number, and ServerGUI for logging.
+     * Constructs a WorkerThread with the specified scheduler and worker number.
      *
-     * @param boundedBlockingQueue the blocking queue from which tasks are fetched
-     * @param workerNum            the number identifying this worker thread
-     * @param serverGUI            the ServerGUI instance for logging purposes
+     * @param scheduler the scheduler from which tasks are fetched
+     * @param workerNum the number identifying this worker thread
      */
-    public WorkerThread(BlockingQueue<Runnable> boundedBlockingQueue, int workerNum, ServerGUI serverGUI) {
-        this.boundedBlockingQueue = boundedBlockingQueue;
+    public WorkerThread(LaneScheduler scheduler, int workerNum) {
+        this.scheduler = scheduler;
         this.workerNum = workerNum;
-        this.serverGUI = serverGUI;
     }
 
 
     /**
      * The main run loop of the worker thread. This method continuously waits for tasks
-     * in the blocking queue, executes them, and logs the activity through the ServerGUI.
+     * in the scheduler's lanes, executes them, and logs the activity through the ServerLog.
+     * It returns once the scheduler is closed and drained.
      */
     @Override
     public void run() {
@@ -47,18 +42,20 @@ class WorkerThread extends Thread {
             try {
                 //Prevent All Workers Logging the Blocking Queue At the Start
                 if (!(firstRun && workerNum != 0)) {
-                    serverGUI.appendLogs("Request(s) In Queue: " + boundedBlockingQueue.size() + "\n");
+                    ServerLog.info("Request(s) In Queue: " + scheduler.size());
                 }
 
-                // Blocking until Socket in queue then Consume a Runnable Socket from the queue and run it
-                Runnable socketRunner = boundedBlockingQueue.take();
-                serverGUI.appendLogs(
-                        "Worker " + (workerNum + 1) + " running new request\n");
-                socketRunner.run();//This is blocking, the loop will only continue when socketRunner connection is finished.
+                // Blocking until a task is in a lane then Consume it from the lane picked by the scheduler and run it
+                Runnable socketRunner = scheduler.take();
+                if (socketRunner == null) {
+                    System.out.println("Worker " + (workerNum + 1) + " stopped");
+                    return;
+                }
+                ServerLog.info("Worker " + (workerNum + 1) + " running new request");
+                socketRunner.run();//This is blocking, the loop will only continue when the task has read or answered a request.
             } catch (InterruptedException e) {
                 // Thread was interrupted, possibly client disconnected
-                JOptionPane.showMessageDialog(null, "A Client Connection Was Interrupted", "Warning",
-                                              JOptionPane.ERROR_MESSAGE);
+                ServerLog.error("A Client Connection Was Interrupted", "Warning");
             }
         }
     }
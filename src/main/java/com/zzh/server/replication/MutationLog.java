@@ -0,0 +1,101 @@
+package com.zzh.server.replication;
+
+import com.zzh.server.MutationListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * The MutationLog class keeps the most recent dictionary changes in a bounded ring buffer and numbers
+ * them with increasing sequence numbers. Readers (e.g. replicas) follow the log from a sequence number
+ * of their choice; a reader that falls more than the capacity behind can no longer be served from the
+ * log and has to start over from a snapshot.
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class MutationLog implements MutationListener {
+    private final Entry[] ring;
+    private long nextSeq = 1;
+
+
+    /**
+     * A single change recorded in the log.
+     *
+     * @param seq       the sequence number of the change
+     * @param action    the operation that caused the change
+     * @param key       the word
+     * @param meaning   the meaning after the change, or null if the word was removed
+     * @param timestamp the time the change was applied, in milliseconds since the epoch
+     */
+    public record Entry(long seq, String action, String key, String meaning, long timestamp) {
+    }
+
+
+    /**
+     * Constructs a MutationLog keeping the given number of most recent changes.
+     *
+     * @param capacity the number of changes kept in memory
+     */
+    public MutationLog(int capacity) {
+        this.ring = new Entry[capacity];
+    }
+
+
+    @Override
+    public synchronized void onMutation(String action, String key, String meaning) {
+        ring[(int) (nextSeq % ring.length)] = new Entry(nextSeq, action, key, meaning, System.currentTimeMillis());
+        nextSeq++;
+        notifyAll();
+    }
+
+
+    /**
+     * @return the sequence number the next change will get
+     */
+    public synchronized long nextSeq() {
+        return nextSeq;
+    }
+
+
+    /**
+     * Returns the changes starting at {@code fromSeq}, waiting up to {@code timeoutMillis}
+     * for one to arrive if there is none yet.
+     *
+     * @param fromSeq       the sequence number of the first change to return
+     * @param max           the maximum number of changes to return
+     * @param timeoutMillis how long to wait for a change
+     * @return the changes in sequence order, empty on timeout, or null if {@code fromSeq} is no longer in the log
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public synchronized List<Entry> readFrom(long fromSeq, int max, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (fromSeq >= nextSeq) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return new ArrayList<>();
+            }
+            wait(remaining);
+        }
+        if (fromSeq < Math.max(1, nextSeq - ring.length)) {
+            return null;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        for (long seq = fromSeq; seq < nextSeq && entries.size() < max; seq++) {
+            entries.add(ring[(int) (seq % ring.length)]);
+        }
+        return entries;
+    }
+
+
+    @Override
+    public synchronized String toString() {
+        return "MutationLog{" +
+                "capacity=" + ring.length +
+                ", nextSeq=" + nextSeq +
+                '}';
+    }
+}
@@ -0,0 +1,114 @@
+package com.zzh.server.replication;
+
+import com.zzh.server.DicStore;
+import com.zzh.server.MutationListener;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The ReadOnlyDictionary class is the client-facing dictionary of a replica server. READ requests are
+ * served from the replicated words, while client changes are rejected because they must go to the
+ * primary. Changes from the primary still reach the wrapped dictionary through {@link ReplicaClient}.
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class ReadOnlyDictionary implements DicStore {
+    private final DicStore dictionary;
+
+
+    /**
+     * Constructs a ReadOnlyDictionary serving reads from the given dictionary.
+     *
+     * @param dictionary the replicated dictionary
+     */
+    public ReadOnlyDictionary(DicStore dictionary) {
+        this.dictionary = dictionary;
+    }
+
+
+    @Override
+    public HashMap<String, String> createWord(String key, String meaning) {
+        return readOnlyError();
+    }
+
+
+    @Override
+    public HashMap<String, String> readWord(String key) {
+        return dictionary.readWord(key);
+    }
+
+
+    @Override
+    public HashMap<String, String> updateWord(String key, String curMeaning, String updatedMeaning) {
+        return readOnlyError();
+    }
+
+
+    @Override
+    public HashMap<String, String> deleteWord(String key) {
+        return readOnlyError();
+    }
+
+
+    @Override
+    public HashMap<String, String> appendWord(String key, String newMeaning) {
+        return readOnlyError();
+    }
+
+
+    @Override
+    public void addMutationListener(MutationListener listener) {
+        dictionary.addMutationListener(listener);
+    }
+
+
+    @Override
+    public void applyMutation(String action, String key, String meaning) {
+        dictionary.applyMutation(action, key, meaning);
+    }
+
+
+    @Override
+    public int replaceAll(Map<String, String> entries) {
+        return dictionary.replaceAll(entries);
+    }
+
+
+    @Override
+    public Map<String, String> snapshot() {
+        return dictionary.snapshot();
+    }
+
+
+    @Override
+    public List<String> scanKeys(String from, boolean inclusive, int limit) {
+        return dictionary.scanKeys(from, inclusive, limit);
+    }
+
+
+    private static HashMap<String, String> readOnlyError() {
+        HashMap<String, String> response = new HashMap<>();
+        response.put("code", "ERROR");
+        response.put("msg", "This server is a read-only replica, please send changes to the primary server.");
+        return response;
+    }
+
+
+    @Override
+    public void close() {
+        dictionary.close();
+    }
+
+
+    @Override
+    public String toString() {
+        return "ReadOnlyDictionary{" +
+                "dictionary=" + dictionary +
+                '}';
+    }
+}
@@ -0,0 +1,187 @@
+package com.zzh.server.replication;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zzh.server.DicStore;
+import com.zzh.server.ServerLog;
+import com.zzh.server.ServerMetrics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The ReplicaClient class runs on a replica server and keeps its dictionary in step with the primary.
+ * It connects to the primary's {@link ReplicationServer}, replaces the local words with the snapshot it
+ * receives and then applies every streamed change. If the connection drops it reconnects and starts
+ * over from a new snapshot.
+ *
+ * <p>
+ * Replication lag is published as the metrics {@code replication.lagEntries} (changes the primary has
+ * made that are not applied yet) and {@code replication.lagMillis} (age of the last applied change
+ * while behind).
+ * </p>
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class ReplicaClient implements Runnable {
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    // The primary sends at least a heartbeat every second, a silent connection is considered dead
+    private static final int READ_TIMEOUT_MILLIS = (int) (5 * ReplicationServer.HEARTBEAT_MILLIS);
+    private static final TypeReference<Map<String, Object>> MESSAGE_TYPE = new TypeReference<>() {
+    };
+    private final String primary;
+    private final DicStore dictionary;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LongAdder applied = ServerMetrics.counter("replication.applied");
+    private final LongAdder resyncs = ServerMetrics.counter("replication.resyncs");
+    private volatile long appliedSeq;
+    private volatile long primarySeq;
+    private volatile long lagMillis;
+    private volatile boolean connected;
+
+
+    /**
+     * Constructs a ReplicaClient following the given primary.
+     *
+     * @param primary    the primary's replication address as {@code host:port}
+     * @param dictionary the local dictionary the changes are applied to
+     */
+    public ReplicaClient(String primary, DicStore dictionary) {
+        this.primary = primary;
+        this.dictionary = dictionary;
+        ServerMetrics.gauge("replication.appliedSeq", () -> appliedSeq);
+        ServerMetrics.gauge("replication.lagEntries", () -> Math.max(0, primarySeq - appliedSeq));
+        ServerMetrics.gauge("replication.lagMillis", () -> lagMillis);
+        ServerMetrics.gauge("replication.connected", () -> connected ? 1 : 0);
+    }
+
+
+    /**
+     * Starts following the primary in a background thread.
+     */
+    public void start() {
+        Thread follower = new Thread(this, "replica-of-" + primary);
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+
+    /**
+     * Connects to the primary and applies its changes, reconnecting with increasing delays when the
+     * primary cannot be reached.
+     */
+    @Override
+    public void run() {
+        long backoff = 500;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                follow();
+                backoff = 500;
+            } catch (IOException | UncheckedIOException e) {
+                // A change that could not be stored is picked up by the snapshot after reconnecting
+                ServerLog.info("Replication from " + primary + " interrupted: " + e.getMessage());
+            } finally {
+                connected = false;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+
+
+    /**
+     * Opens one connection to the primary and follows it until the connection fails.
+     *
+     * @throws IOException if the primary cannot be reached or the connection fails
+     */
+    private void follow() throws IOException {
+        int colon = primary.lastIndexOf(':');
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(primary.substring(0, colon), Integer.parseInt(primary.substring(colon + 1))),
+                           CONNECT_TIMEOUT_MILLIS);
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            follow(socket);
+        }
+    }
+
+
+    /**
+     * Reads the snapshot and then the changes from a connected socket.
+     *
+     * @throws IOException if the connection fails or stays silent for longer than a few heartbeats
+     */
+    private void follow(Socket socket) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            connected = true;
+            HashMap<String, String> snapshot = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Map<String, Object> message = objectMapper.readValue(line, MESSAGE_TYPE);
+                switch ((String) message.get("type")) {
+                    case "SNAPSHOT" -> snapshot = new HashMap<>();
+                    case "ENTRY" -> snapshot.put((String) message.get("word"), (String) message.get("meaning"));
+                    case "SNAPSHOT_END" -> {
+                        int changed = dictionary.replaceAll(snapshot);
+                        snapshot = null;
+                        appliedSeq = seqOf(message);
+                        primarySeq = appliedSeq;
+                        lagMillis = 0;
+                        ServerLog.info("Replica synchronised with " + primary + ", " + changed + " word(s) changed");
+                    }
+                    case "MUTATION" -> {
+                        dictionary.applyMutation((String) message.get("action"), (String) message.get("word"),
+                                                 (String) message.get("meaning"));
+                        applied.increment();
+                        appliedSeq = seqOf(message);
+                        long head = message.get("head") instanceof Number number ? number.longValue() : appliedSeq;
+                        primarySeq = Math.max(primarySeq, Math.max(head, appliedSeq));
+                        lagMillis = Math.max(0, System.currentTimeMillis() - ((Number) message.get("ts")).longValue());
+                    }
+                    case "HEARTBEAT" -> {
+                        primarySeq = seqOf(message);
+                        if (appliedSeq >= primarySeq) {
+                            lagMillis = 0;
+                        }
+                    }
+                    case "RESYNC" -> {
+                        resyncs.increment();
+                        return;
+                    }
+                    default -> ServerLog.info("Unknown replication message: " + line);
+                }
+            }
+        }
+    }
+
+
+    private static long seqOf(Map<String, Object> message) {
+        return ((Number) message.get("seq")).longValue();
+    }
+
+
+    @Override
+    public String toString() {
+        return "ReplicaClient{" +
+                "primary='" + primary + '\'' +
+                ", appliedSeq=" + appliedSeq +
+                ", primarySeq=" + primarySeq +
+                '}';
+    }
+}
@@ -0,0 +1,167 @@
+package com.zzh.server.replication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zzh.server.DicStore;
+import com.zzh.server.ServerLog;
+import com.zzh.server.ServerMetrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * The ReplicationServer class runs on a primary server and streams its changes to replica servers.
+ * Every replica connecting to the replication port first receives a full snapshot of the dictionary,
+ * then every change from the {@link MutationLog} as one JSON object per line. Every change carries the
+ * latest sequence number of the log as its "head", and when there is no change for a second a heartbeat
+ * carrying it is sent, so replicas can report their lag even while they are busy catching up.
+ *
+ * <p>
+ * Changes carry the complete meaning of the word, so applying a change twice is harmless. This is what
+ * makes it safe to start following the log slightly before the snapshot is taken.
+ * </p>
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class ReplicationServer {
+    private static final int BATCH_SIZE = 512;
+    static final long HEARTBEAT_MILLIS = 1000;
+    private final int port;
+    private final DicStore dictionary;
+    private final MutationLog log;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger connectedReplicas = new AtomicInteger();
+
+
+    /**
+     * Constructs a ReplicationServer. The log must already be registered as a listener of the dictionary.
+     *
+     * @param port       the port replicas connect to
+     * @param dictionary the dictionary being replicated
+     * @param log        the log of changes applied to the dictionary
+     */
+    public ReplicationServer(int port, DicStore dictionary, MutationLog log) {
+        this.port = port;
+        this.dictionary = dictionary;
+        this.log = log;
+        ServerMetrics.gauge("replication.replicas", connectedReplicas::get);
+        ServerMetrics.gauge("replication.seq", () -> log.nextSeq() - 1);
+    }
+
+
+    /**
+     * Starts accepting replica connections in a background thread. Every replica is served by its own thread.
+     */
+    public void start() {
+        Thread acceptor = new Thread(() -> {
+            try (ServerSocket server = new ServerSocket(port)) {
+                ServerLog.info("Replication listening on port " + port);
+                while (true) {
+                    Socket replica = server.accept();
+                    Thread sender = new Thread(() -> serveReplica(replica), "replication-" + replica.getRemoteSocketAddress());
+                    sender.setDaemon(true);
+                    sender.start();
+                }
+            } catch (IOException e) {
+                ServerLog.error("Error In Replication Socket, Replicas Can Not Connect", "Error");
+                e.printStackTrace();
+            }
+        }, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+
+    /**
+     * Sends the snapshot and then the stream of changes to one replica until it disconnects
+     * or falls too far behind the log.
+     *
+     * @param replica the replica's socket
+     */
+    private void serveReplica(Socket replica) {
+        connectedReplicas.incrementAndGet();
+        ServerLog.info("Replica " + replica.getRemoteSocketAddress() + " connected");
+        try (Socket socket = replica;
+             BufferedWriter writer = new BufferedWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            // Follow the log from before the snapshot so no change between the two is missed
+            long seq = log.nextSeq();
+            Map<String, String> snapshot = dictionary.snapshot();
+            send(writer, message("SNAPSHOT", "size", snapshot.size()));
+            for (Map.Entry<String, String> entry : snapshot.entrySet()) {
+                Map<String, Object> line = message("ENTRY", "word", entry.getKey());
+                line.put("meaning", entry.getValue());
+                send(writer, line);
+            }
+            send(writer, message("SNAPSHOT_END", "seq", seq - 1));
+            writer.flush();
+
+            while (true) {
+                List<MutationLog.Entry> entries = log.readFrom(seq, BATCH_SIZE, HEARTBEAT_MILLIS);
+                long head = log.nextSeq() - 1;
+                if (entries == null) {
+                    // The replica is too slow, it has to start over from a new snapshot
+                    send(writer, message("RESYNC", "seq", seq));
+                    writer.flush();
+                    break;
+                }
+                for (MutationLog.Entry entry : entries) {
+                    Map<String, Object> line = message("MUTATION", "seq", entry.seq());
+                    line.put("action", entry.action());
+                    line.put("word", entry.key());
+                    line.put("meaning", entry.meaning());
+                    line.put("ts", entry.timestamp());
+                    line.put("head", head);
+                    send(writer, line);
+                    seq = entry.seq() + 1;
+                }
+                if (entries.isEmpty()) {
+                    Map<String, Object> heartbeat = message("HEARTBEAT", "seq", seq - 1);
+                    heartbeat.put("ts", System.currentTimeMillis());
+                    send(writer, heartbeat);
+                }
+                writer.flush();
+            }
+        } catch (IOException e) {
+            ServerLog.info("Replica " + replica.getRemoteSocketAddress() + " disconnected");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            connectedReplicas.decrementAndGet();
+        }
+    }
+
+
+    private static Map<String, Object> message(String type, String field, Object value) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", type);
+        message.put(field, value);
+        return message;
+    }
+
+
+    private void send(BufferedWriter writer, Map<String, Object> message) throws IOException {
+        writer.write(objectMapper.writeValueAsString(message));
+        writer.write('\n');
+    }
+
+
+    @Override
+    public String toString() {
+        return "ReplicationServer{" +
+                "port=" + port +
+                ", replicas=" + connectedReplicas.get() +
+                ", log=" + log +
+                '}';
+    }
+}
@@ -0,0 +1,150 @@
+package com.zzh.server.store;
+
+import com.zzh.common.ConsistentHashRing;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The CountingBloomFilter class answers whether a word may be in a set, using a few bits per word.
+ * A "no" is always right, a "yes" is wrong with a small probability. Every word sets {@code k} counters
+ * chosen by double hashing; unlike a plain Bloom filter the counters count, so words can also be removed.
+ *
+ * <p>
+ * The counters are 4 bits wide, sixteen to a long, and are changed with compare-and-set, so any number
+ * of threads may add, remove and test words without locking. A counter that reaches 15 stays there,
+ * because its true count is no longer known; decrementing it could otherwise hide a word that is present.
+ * </p>
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public final class CountingBloomFilter {
+    private static final int MAX_COUNT = 15;
+    private final AtomicLongArray words;
+    private final long counters;
+    private final int hashes;
+    private final LongAdder occupied = new LongAdder();
+
+
+    /**
+     * Constructs an empty CountingBloomFilter sized for the expected number of words.
+     *
+     * @param expectedWords           the number of words the filter is sized for
+     * @param falsePositiveProbability the wanted probability that a word not in the set is reported as present
+     */
+    public CountingBloomFilter(long expectedWords, double falsePositiveProbability) {
+        long n = Math.max(1, expectedWords);
+        double p = Math.min(0.5, Math.max(1e-9, falsePositiveProbability));
+        this.counters = Math.max(64, (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2))));
+        this.hashes = Math.max(1, (int) Math.round((double) counters / n * Math.log(2)));
+        this.words = new AtomicLongArray(Math.toIntExact((counters + 15) / 16));
+    }
+
+
+    /**
+     * Adds a word. Adding a word that is already in the set counts it twice.
+     *
+     * @param key the word
+     */
+    public void add(String key) {
+        long h1 = ConsistentHashRing.hash(key);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashes; i++) {
+            change(Math.floorMod(h1 + i * h2, counters), 1);
+        }
+    }
+
+
+    /**
+     * Removes a word. Only words that were added may be removed.
+     *
+     * @param key the word
+     */
+    public void remove(String key) {
+        long h1 = ConsistentHashRing.hash(key);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashes; i++) {
+            change(Math.floorMod(h1 + i * h2, counters), -1);
+        }
+    }
+
+
+    /**
+     * @param key the word
+     * @return false if the word is certainly not in the set, true if it probably is
+     */
+    public boolean mightContain(String key) {
+        long h1 = ConsistentHashRing.hash(key);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long counter = Math.floorMod(h1 + i * h2, counters);
+            if ((words.get((int) (counter >>> 4)) >>> shift(counter) & MAX_COUNT) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Estimates the current false positive probability from the share of counters in use, which rises
+     * above the configured one when the set grows beyond the expected number of words.
+     *
+     * @return the probability that a word not in the set is reported as present
+     */
+    public double expectedFalsePositiveProbability() {
+        return Math.pow((double) occupied.sum() / counters, hashes);
+    }
+
+
+    private void change(long counter, int delta) {
+        int index = (int) (counter >>> 4);
+        int shift = shift(counter);
+        while (true) {
+            long word = words.get(index);
+            long count = word >>> shift & MAX_COUNT;
+            if (count == MAX_COUNT || (delta < 0 && count == 0)) {
+                return;
+            }
+            long updated = word + ((long) delta << shift);
+            if (words.compareAndSet(index, word, updated)) {
+                if (count == 0) {
+                    occupied.increment();
+                } else if (count + delta == 0) {
+                    occupied.decrement();
+                }
+                return;
+            }
+        }
+    }
+
+
+    private static int shift(long counter) {
+        return (int) (counter & 15) << 2;
+    }
+
+
+    /**
+     * The MurmurHash3 finalizer, giving the second hash of double hashing from the first.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+
+    @Override
+    public String toString() {
+        return "CountingBloomFilter{" +
+                "counters=" + counters +
+                ", hashes=" + hashes +
+                '}';
+    }
+}
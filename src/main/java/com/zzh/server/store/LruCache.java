@@ -0,0 +1,107 @@
+package com.zzh.server.store;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The LruCache class is a bounded map that evicts its least recently used entries. Entries are spread over
+ * several independently locked stripes by key hash, each an access-ordered {@link LinkedHashMap}, so
+ * concurrent lookups of different words rarely wait for each other. Eviction is per stripe, which is
+ * close to a global LRU order once the cache holds more than a few entries per stripe.
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public final class LruCache<K, V> {
+    private static final int STRIPES = 16;
+    private final List<LinkedHashMap<K, V>> stripes = new ArrayList<>(STRIPES);
+
+
+    /**
+     * Constructs an empty LruCache.
+     *
+     * @param capacity the maximum number of entries
+     */
+    public LruCache(int capacity) {
+        int stripeCapacity = Math.max(1, (capacity + STRIPES - 1) / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.add(new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                    return size() > stripeCapacity;
+                }
+            });
+        }
+    }
+
+
+    /**
+     * Looks up an entry and marks it as most recently used.
+     *
+     * @param key the key
+     * @return the value, or null if the key is not cached
+     */
+    public V get(K key) {
+        LinkedHashMap<K, V> stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.get(key);
+        }
+    }
+
+
+    /**
+     * Adds or replaces an entry, evicting the least recently used entry of its stripe if it is full.
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    public void put(K key, V value) {
+        LinkedHashMap<K, V> stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.put(key, value);
+        }
+    }
+
+
+    /**
+     * @param key the key to remove
+     */
+    public void remove(K key) {
+        LinkedHashMap<K, V> stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.remove(key);
+        }
+    }
+
+
+    /**
+     * @return the number of cached entries
+     */
+    public int size() {
+        int size = 0;
+        for (LinkedHashMap<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+
+    private LinkedHashMap<K, V> stripe(K key) {
+        int h = key.hashCode();
+        return stripes.get((h ^ (h >>> 16)) & (STRIPES - 1));
+    }
+
+
+    @Override
+    public String toString() {
+        return "LruCache{" +
+                "size=" + size() +
+                '}';
+    }
+}
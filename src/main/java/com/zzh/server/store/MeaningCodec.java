@@ -0,0 +1,272 @@
+package com.zzh.server.store;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+/**
+ * The MeaningCodec class compresses meanings one by one for storing them in memory. A single meaning is
+ * too short to compress well on its own, so all meanings share a preset Deflate dictionary trained from
+ * the words that occur most often in the dictionary's meanings. Back references into it make a typical
+ * meaning a fraction of its size, while each meaning can still be decompressed by itself.
+ *
+ * <p>
+ * A stored meaning is either the String itself, when compressing would not make it smaller, or a byte
+ * array holding the UTF-8 length of the meaning followed by the raw Deflate data. Deflaters and Inflaters
+ * are kept per thread, so encoding and decoding allocate little more than the result and need no lock.
+ * </p>
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public final class MeaningCodec {
+    private static final int PRESET_SIZE = 32 * 1024; // The Deflate window, anything before it is unreachable
+    private static final int SAMPLE_MEANINGS = 20_000;
+    private final byte[] preset;
+    private final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_COMPRESSION, true));
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+
+    /**
+     * Constructs a MeaningCodec using the given preset dictionary.
+     *
+     * @param preset the bytes meanings may refer back to, most useful last
+     */
+    private MeaningCodec(byte[] preset) {
+        this.preset = preset;
+    }
+
+
+    /**
+     * Trains a MeaningCodec on a sample of meanings. Words are scored by the bytes a back reference to
+     * them would save across the sample, and the best words fill the preset dictionary.
+     *
+     * @param meanings the meanings the codec will mostly store
+     * @return the codec
+     */
+    public static MeaningCodec train(Collection<String> meanings) {
+        HashMap<String, Integer> counts = new HashMap<>();
+        int step = Math.max(1, meanings.size() / SAMPLE_MEANINGS);
+        int i = 0;
+        for (String meaning : meanings) {
+            if (i++ % step == 0) {
+                // Each word keeps the whitespace after it, which the next meaning most likely repeats too
+                for (String word : meaning.split("(?<=\\s)")) {
+                    counts.merge(word, 1, Integer::sum);
+                }
+            }
+        }
+
+        List<Map.Entry<String, Integer>> words = new ArrayList<>(counts.entrySet());
+        words.removeIf(word -> word.getValue() < 2 || word.getKey().length() < 3);
+        words.sort((a, b) -> Long.compare((long) b.getValue() * b.getKey().length(),
+                                          (long) a.getValue() * a.getKey().length()));
+        List<byte[]> chosen = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, Integer> word : words) {
+            byte[] bytes = word.getKey().getBytes(StandardCharsets.UTF_8);
+            if (size + bytes.length > PRESET_SIZE) {
+                break;
+            }
+            chosen.add(bytes);
+            size += bytes.length;
+        }
+
+        // Closer back references are cheaper, so the most valuable words go at the end
+        byte[] preset = new byte[size];
+        int position = size;
+        for (byte[] bytes : chosen) {
+            position -= bytes.length;
+            System.arraycopy(bytes, 0, preset, position, bytes.length);
+        }
+        return new MeaningCodec(preset);
+    }
+
+
+    /**
+     * Compresses a meaning for storing.
+     *
+     * @param meaning the meaning
+     * @return the compressed meaning, or the meaning itself if compressing does not make it smaller
+     */
+    public Object encode(String meaning) {
+        byte[] raw = meaning.getBytes(StandardCharsets.UTF_8);
+        byte[] buffer = new byte[raw.length + 5];
+        int length = writeLength(buffer, raw.length);
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        if (preset.length > 0) {
+            deflater.setDictionary(preset);
+        }
+        deflater.setInput(raw);
+        deflater.finish();
+        while (!deflater.finished() && length < buffer.length) {
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        if (!deflater.finished() || length >= meaning.length()) {
+            return meaning;
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+
+    /**
+     * Restores a stored meaning.
+     *
+     * @param stored a value returned by {@link #encode}, or null
+     * @return the meaning, or null if {@code stored} is null
+     * @throws IllegalStateException if the compressed data is corrupt
+     */
+    public String decode(Object stored) {
+        if (!(stored instanceof byte[] compressed)) {
+            return (String) stored;
+        }
+        int rawLength = (int) rawSize(compressed);
+        int offset = 0;
+        while (compressed[offset++] < 0) {
+            // Skip the length prefix
+        }
+
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        if (preset.length > 0) {
+            inflater.setDictionary(preset);
+        }
+        inflater.setInput(compressed, offset, compressed.length - offset);
+        byte[] raw = new byte[rawLength];
+        int length = 0;
+        try {
+            while (length < rawLength) {
+                int inflated = inflater.inflate(raw, length, rawLength - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new DataFormatException("Compressed meaning ends early");
+                }
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Compressed meaning is corrupt", e);
+        }
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Presents a map of stored meanings as a map of meanings. Meanings are decoded when they are read.
+     *
+     * @param stored the map of stored meanings, which must not change
+     * @return a read-only view of the decoded meanings
+     */
+    public Map<String, String> decoded(Map<String, Object> stored) {
+        return new AbstractMap<>() {
+            @Override
+            public String get(Object key) {
+                return decode(stored.get(key));
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return stored.containsKey(key);
+            }
+
+            @Override
+            public int size() {
+                return stored.size();
+            }
+
+            @Override
+            public Set<String> keySet() {
+                return stored.keySet();
+            }
+
+            @Override
+            public Set<Entry<String, String>> entrySet() {
+                return new AbstractSet<>() {
+                    @Override
+                    public Iterator<Entry<String, String>> iterator() {
+                        Iterator<Entry<String, Object>> entries = stored.entrySet().iterator();
+                        return new Iterator<>() {
+                            @Override
+                            public boolean hasNext() {
+                                return entries.hasNext();
+                            }
+
+                            @Override
+                            public Entry<String, String> next() {
+                                Entry<String, Object> entry = entries.next();
+                                return new SimpleImmutableEntry<>(entry.getKey(), decode(entry.getValue()));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return stored.size();
+                    }
+                };
+            }
+        };
+    }
+
+
+    private static int writeLength(byte[] buffer, int value) {
+        int offset = 0;
+        while ((value & ~0x7F) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+
+    /**
+     * @param stored a value returned by {@link #encode}, or null
+     * @return the size of the meaning in bytes, assuming one byte per character for an uncompressed one
+     */
+    public static long rawSize(Object stored) {
+        if (stored instanceof byte[] compressed) {
+            int rawLength = 0;
+            for (int offset = 0, shift = 0; ; shift += 7) {
+                byte b = compressed[offset++];
+                rawLength |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return rawLength;
+                }
+            }
+        }
+        return stored == null ? 0 : ((String) stored).length();
+    }
+
+
+    /**
+     * @param stored a value returned by {@link #encode}, or null
+     * @return the number of bytes the stored meaning occupies, not counting object headers
+     */
+    public static long storedSize(Object stored) {
+        if (stored instanceof byte[] compressed) {
+            return compressed.length;
+        }
+        return stored == null ? 0 : ((String) stored).length();
+    }
+
+
+    @Override
+    public String toString() {
+        return "MeaningCodec{" +
+                "preset=" + preset.length +
+                '}';
+    }
+}
@@ -0,0 +1,398 @@
+package com.zzh.server.store;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+
+/**
+ * The PersistentHashMap class is an immutable hash array mapped trie (HAMT). {@link #plus} and
+ * {@link #minus} return a new map that shares every untouched branch with the old one, so publishing a
+ * new version of a dictionary costs O(log32 n) allocations instead of copying it, and any reader holding
+ * an old version keeps a consistent point-in-time view without locking.
+ *
+ * <p>
+ * Keys and values must not be null. The map is read-only through the {@link Map} interface.
+ * </p>
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+    private static final Object NOT_FOUND = new Object();
+    private final Node root;
+    private final int size;
+
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+
+    /**
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+
+    /**
+     * Builds a persistent map holding the same entries as the given map.
+     *
+     * @param entries the entries to copy
+     * @return the persistent map
+     */
+    public static <K, V> PersistentHashMap<K, V> of(Map<? extends K, ? extends V> entries) {
+        PersistentHashMap<K, V> map = empty();
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+            map = map.plus(entry.getKey(), entry.getValue());
+        }
+        return map;
+    }
+
+
+    /**
+     * Returns a map with the key set to the value. This map is not changed.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the new map, or this map if the key already had this value
+     */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        boolean[] added = new boolean[1];
+        Node base = root == null ? BitmapNode.EMPTY : root;
+        Node newRoot = base.assoc(0, hash(key), key, value, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+
+    /**
+     * Returns a map without the key. This map is not changed.
+     *
+     * @param key the key to remove
+     * @return the new map, or this map if the key was not present
+     */
+    public PersistentHashMap<K, V> minus(Object key) {
+        if (root == null) {
+            return this;
+        }
+        Node newRoot = root.without(0, hash(key), key);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentHashMap<>(newRoot, size - 1);
+    }
+
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (root == null || key == null) {
+            return null;
+        }
+        Object value = root.find(0, hash(key), key);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+
+    @Override
+    public boolean containsKey(Object key) {
+        return root != null && key != null && root.find(0, hash(key), key) != NOT_FOUND;
+    }
+
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        for (Iterator<Map.Entry<K, V>> it = new EntryIterator<>(root); it.hasNext(); ) {
+            Map.Entry<K, V> entry = it.next();
+            action.accept(entry.getKey(), entry.getValue());
+        }
+    }
+
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new EntryIterator<>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+
+    /**
+     * A trie node. Both node types store alternating key/value slots in {@link #slots()};
+     * a null key marks a slot whose value is a child node.
+     */
+    private interface Node {
+        Object find(int shift, int hash, Object key);
+
+        Node assoc(int shift, int hash, Object key, Object value, boolean[] added);
+
+        Node without(int shift, int hash, Object key);
+
+        Object[] slots();
+    }
+
+
+    /**
+     * A node branching on 5 bits of the hash, holding only the slots whose bit is set in the bitmap.
+     */
+    private static final class BitmapNode implements Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+        private final int bitmap;
+        private final Object[] slots;
+
+        BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        @Override
+        public Object find(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & 31);
+            if ((bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object slotKey = slots[i];
+            if (slotKey == null) {
+                return ((Node) slots[i + 1]).find(shift + 5, hash, key);
+            }
+            return key.equals(slotKey) ? slots[i + 1] : NOT_FOUND;
+        }
+
+        @Override
+        public Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & 31);
+            int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] grown = new Object[slots.length + 2];
+                System.arraycopy(slots, 0, grown, 0, i);
+                grown[i] = key;
+                grown[i + 1] = value;
+                System.arraycopy(slots, i, grown, i + 2, slots.length - i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, grown);
+            }
+
+            Object slotKey = slots[i];
+            Object slotValue = slots[i + 1];
+            if (slotKey == null) {
+                Node child = ((Node) slotValue).assoc(shift + 5, hash, key, value, added);
+                return child == slotValue ? this : new BitmapNode(bitmap, replace(slots, i + 1, child));
+            }
+            if (key.equals(slotKey)) {
+                return value == slotValue ? this : new BitmapNode(bitmap, replace(slots, i + 1, value));
+            }
+            // Two keys share this slot: push both one level down
+            added[0] = true;
+            Node child = pair(shift + 5, slotKey, slotValue, hash, key, value);
+            Object[] copy = replace(slots, i + 1, child);
+            copy[i] = null;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        @Override
+        public Node without(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & 31);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object slotKey = slots[i];
+            if (slotKey == null) {
+                Node child = (Node) slots[i + 1];
+                Node newChild = child.without(shift + 5, hash, key);
+                if (newChild == child) {
+                    return this;
+                }
+                if (newChild != null) {
+                    return new BitmapNode(bitmap, replace(slots, i + 1, newChild));
+                }
+            } else if (!key.equals(slotKey)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] shrunk = new Object[slots.length - 2];
+            System.arraycopy(slots, 0, shrunk, 0, i);
+            System.arraycopy(slots, i + 2, shrunk, i, slots.length - i - 2);
+            return new BitmapNode(bitmap ^ bit, shrunk);
+        }
+
+        @Override
+        public Object[] slots() {
+            return slots;
+        }
+
+        private static Node pair(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+            int hash1 = hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+            }
+            boolean[] added = new boolean[1];
+            return EMPTY.assoc(shift, hash1, key1, value1, added).assoc(shift, hash2, key2, value2, added);
+        }
+    }
+
+
+    /**
+     * A leaf holding keys whose full hashes are equal.
+     */
+    private static final class CollisionNode implements Node {
+        private final int hash;
+        private final Object[] slots;
+
+        CollisionNode(int hash, Object[] slots) {
+            this.hash = hash;
+            this.slots = slots;
+        }
+
+        @Override
+        public Object find(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            return hash == this.hash && i >= 0 ? slots[i + 1] : NOT_FOUND;
+        }
+
+        @Override
+        public Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                int bit = 1 << ((this.hash >>> shift) & 31);
+                return new BitmapNode(bit, new Object[]{null, this}).assoc(shift, hash, key, value, added);
+            }
+            int i = indexOf(key);
+            if (i >= 0) {
+                return slots[i + 1] == value ? this : new CollisionNode(hash, replace(slots, i + 1, value));
+            }
+            Object[] grown = new Object[slots.length + 2];
+            System.arraycopy(slots, 0, grown, 0, slots.length);
+            grown[slots.length] = key;
+            grown[slots.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, grown);
+        }
+
+        @Override
+        public Node without(int shift, int hash, Object key) {
+            int i = hash == this.hash ? indexOf(key) : -1;
+            if (i < 0) {
+                return this;
+            }
+            if (slots.length == 2) {
+                return null;
+            }
+            Object[] shrunk = new Object[slots.length - 2];
+            System.arraycopy(slots, 0, shrunk, 0, i);
+            System.arraycopy(slots, i + 2, shrunk, i, slots.length - i - 2);
+            return new CollisionNode(hash, shrunk);
+        }
+
+        @Override
+        public Object[] slots() {
+            return slots;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < slots.length; i += 2) {
+                if (key.equals(slots[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+
+    private static Object[] replace(Object[] slots, int index, Object value) {
+        Object[] copy = slots.clone();
+        copy[index] = value;
+        return copy;
+    }
+
+
+    /**
+     * Depth-first iterator over the slots of the trie. The trie is at most 8 levels deep
+     * (7 bitmap levels for a 32-bit hash plus a collision leaf).
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final Object[][] stack = new Object[9][];
+        private final int[] positions = new int[9];
+        private int depth = -1;
+        private Map.Entry<K, V> next;
+
+        EntryIterator(Node root) {
+            if (root != null) {
+                stack[++depth] = root.slots();
+            }
+            advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                Object[] slots = stack[depth];
+                int i = positions[depth];
+                if (i >= slots.length) {
+                    positions[depth--] = 0;
+                    continue;
+                }
+                positions[depth] = i + 2;
+                if (slots[i] == null) {
+                    stack[++depth] = ((Node) slots[i + 1]).slots();
+                } else {
+                    next = new SimpleImmutableEntry<>((K) slots[i], (V) slots[i + 1]);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K, V> entry = next;
+            advance();
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.zzh.server;
+
+import com.zzh.client.ClientSocket;
+import com.zzh.server.pool.DicPool;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * The AllocationBenchmark class measures how many bytes the server allocates per request. It starts a
+ * server in this JVM, sends cached READ requests over one kept-alive connection from the main thread, and
+ * reports the bytes allocated by every other thread, i.e. the accept loop, the workers and the keep-alive
+ * watcher, as reported by {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}.
+ *
+ * <p>
+ * Run with {@code java -cp target/classes:target/test-classes:<jackson jars> com.zzh.server.AllocationBenchmark
+ * [port] [requests]}. Defaults to port 9400 and 100000 measured requests after as many warm-up requests.
+ * </p>
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class AllocationBenchmark {
+    private static final String REQUEST = "{\"action\":\"READ\",\"word\":\"apple\",\"keepAlive\":\"true\"}";
+
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 9400;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+
+        Path file = Files.createTempFile("allocation-benchmark", ".json");
+        Files.writeString(file, "{\"apple\":\"A round fruit of a tree of the rose family\"}");
+        Dictionary dictionary = new Dictionary(file.toString());
+        ResponseCache responseCache = new ResponseCache(1000);
+        dictionary.addMutationListener(responseCache);
+        DicServer server = new DicServer(port, new RequestHandler(dictionary, responseCache, null), new DicPool(2, 16));
+        Thread serving = new Thread(server::serve, "benchmark-server");
+        serving.setDaemon(true);
+        serving.start();
+        Thread.sleep(500);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        ClientSocket connection = new ClientSocket("localhost", port, 3000, 10_000);
+        try {
+            // The first READ misses the response cache and is slow on purpose, the rest warm up the JIT
+            send(connection, requests);
+
+            Map<String, Long> before = serverAllocatedBytes(threads);
+            long start = System.nanoTime();
+            send(connection, requests);
+            long elapsed = System.nanoTime() - start;
+            Map<String, Long> after = serverAllocatedBytes(threads);
+
+            System.out.printf("%d requests in %d ms, %.1f us per request%n", requests, elapsed / 1_000_000,
+                              elapsed / 1000.0 / requests);
+            long allocated = 0;
+            for (Map.Entry<String, Long> thread : after.entrySet()) {
+                long bytes = thread.getValue() - before.getOrDefault(thread.getKey(), 0L);
+                allocated += bytes;
+                if (bytes > 0) {
+                    System.out.printf("  %-24s %8.1f bytes per request%n", thread.getKey(), (double) bytes / requests);
+                }
+            }
+            System.out.printf("Server allocated %d bytes, %.1f bytes per request%n", allocated,
+                              (double) allocated / requests);
+        } finally {
+            connection.close();
+            server.shutdown(1000);
+            dictionary.close();
+            Files.deleteIfExists(file);
+        }
+    }
+
+
+    private static void send(ClientSocket connection, int requests) throws Exception {
+        for (int i = 0; i < requests; i++) {
+            HashMap<String, String> response = connection.exchange(REQUEST);
+            if (!"SUCCESS".equals(response.get("code"))) {
+                throw new IllegalStateException("Unexpected response " + response);
+            }
+        }
+    }
+
+
+    /**
+     * @return the bytes allocated so far by every live thread except the calling one, by thread name and id
+     */
+    private static Map<String, Long> serverAllocatedBytes(com.sun.management.ThreadMXBean threads) {
+        long self = Thread.currentThread().getId();
+        Map<String, Long> allocated = new TreeMap<>();
+        for (ThreadInfo thread : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (thread == null || thread.getThreadId() == self) {
+                continue;
+            }
+            long bytes = threads.getThreadAllocatedBytes(thread.getThreadId());
+            if (bytes > 0) {
+                allocated.put(thread.getThreadName() + "#" + thread.getThreadId(), bytes);
+            }
+        }
+        return allocated;
+    }
+}
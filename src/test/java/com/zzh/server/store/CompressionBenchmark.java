@@ -0,0 +1,142 @@
+package com.zzh.server.store;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+
+/**
+ * The CompressionBenchmark class weighs the memory {@link MeaningCodec} saves against the time it adds to a
+ * lookup. It generates a dictionary of English-like meanings, stores it plain, compressed without a preset
+ * dictionary and compressed with a trained one, and reports for each the bytes of the meanings, the heap
+ * the map holds and the average time of looking up and decoding a random word.
+ *
+ * <p>
+ * Run with {@code java -Xmx1g -cp target/classes:target/test-classes com.zzh.server.store.CompressionBenchmark
+ * [words] [meaningLength]}. Defaults to 300000 words of about 150 characters.
+ * </p>
+ *
+ * <p>
+ * Created by Zhonghe Zheng, Student ID: 825612.
+ * </p>
+ */
+public class CompressionBenchmark {
+    private static final int LOOKUPS = 2_000_000;
+    private static final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private static volatile long sink; // Keeps the lookups from being optimised away
+
+
+    public static void main(String[] args) {
+        int words = args.length > 0 ? Integer.parseInt(args[0]) : 300_000;
+        int meaningLength = args.length > 1 ? Integer.parseInt(args[1]) : 150;
+        Map<String, String> meanings = generate(words, meaningLength, new Random(42));
+
+        System.out.printf("%d words, meanings of about %d characters%n", words, meaningLength);
+        System.out.printf("%-16s %12s %12s %12s%n", "storage", "meaning MB", "heap MB", "lookup us");
+        measure("plain", meanings, null);
+        measure("deflate", meanings, MeaningCodec.train(List.of()));
+        measure("deflate+preset", meanings, MeaningCodec.train(meanings.values()));
+    }
+
+
+    /**
+     * Stores the meanings with a codec, or as they are without one, and prints the sizes and lookup time.
+     */
+    private static void measure(String name, Map<String, String> meanings, MeaningCodec codec) {
+        long heapBefore = usedHeap();
+        HashMap<String, Object> stored = new HashMap<>(meanings.size() * 2);
+        long storedBytes = 0;
+        for (Map.Entry<String, String> entry : meanings.entrySet()) {
+            // A copy, so the heap counts the plain meanings as well
+            Object value = codec == null ? String.valueOf(entry.getValue().toCharArray()) : codec.encode(entry.getValue());
+            stored.put(entry.getKey(), value);
+            storedBytes += MeaningCodec.storedSize(value);
+        }
+        long heap = usedHeap() - heapBefore;
+
+        String[] keys = meanings.keySet().toArray(new String[0]);
+        Random random = new Random(7);
+        sink += lookups(stored, codec, keys, random, LOOKUPS / 4); // Warm up
+        long start = System.nanoTime();
+        sink += lookups(stored, codec, keys, random, LOOKUPS);
+        double lookupMicros = (System.nanoTime() - start) / 1000.0 / LOOKUPS;
+
+        System.out.printf("%-16s %12.1f %12.1f %12.2f%n", name, storedBytes / 1e6, heap / 1e6, lookupMicros);
+        stored.clear();
+    }
+
+
+    private static long lookups(Map<String, Object> stored, MeaningCodec codec, String[] keys, Random random,
+                                int count) {
+        long length = 0;
+        for (int i = 0; i < count; i++) {
+            Object value = stored.get(keys[random.nextInt(keys.length)]);
+            length += (codec == null ? (String) value : codec.decode(value)).length();
+        }
+        return length;
+    }
+
+
+    /**
+     * Generates meanings from a vocabulary of made-up words whose frequencies follow Zipf's law, as the
+     * words of natural language do.
+     */
+    private static Map<String, String> generate(int words, int meaningLength, Random random) {
+        List<String> vocabulary = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 2 + random.nextInt(4) + random.nextInt(5);
+            for (int j = 0; j < length; j++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            vocabulary.add(word.toString());
+        }
+        double[] cumulative = new double[vocabulary.size()];
+        double total = 0;
+        for (int i = 0; i < cumulative.length; i++) {
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+
+        Map<String, String> meanings = new HashMap<>(words * 2);
+        while (meanings.size() < words) {
+            StringBuilder meaning = new StringBuilder();
+            boolean sentenceStart = true;
+            while (meaning.length() < meaningLength) {
+                String word = vocabulary.get(zipf(cumulative, random.nextDouble() * total));
+                meaning.append(sentenceStart ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+                sentenceStart = random.nextInt(12) == 0;
+                meaning.append(sentenceStart ? ". " : random.nextInt(8) == 0 ? ", " : " ");
+            }
+            meanings.put(vocabulary.get(random.nextInt(vocabulary.size())) + meanings.size(), meaning.toString().trim());
+        }
+        return meanings;
+    }
+
+
+    private static int zipf(double[] cumulative, double target) {
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulative[middle] < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}